@@ -0,0 +1,35 @@
+package com.company.bench;
+
+import com.company.data.CsvReader;
+import com.company.data.Dataset;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Reading of the mushroom dataset, the path is relative to the directory JMH is run from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CsvBenchmarks {
+  private static final List<String> MUSHROOM_COLUMN_NAMES = IntStream.range(0, 23)
+    .mapToObj(i -> i == 0 ? "class" : "attr-" + i)
+    .collect(Collectors.toList());
+
+  @Param("resources/dataset.csv")
+  public String dataset;
+
+  @Benchmark
+  public Dataset read() throws IOException {
+    return CsvReader.read(Path.of(dataset), MUSHROOM_COLUMN_NAMES, 0);
+  }
+}
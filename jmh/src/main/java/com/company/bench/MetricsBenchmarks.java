@@ -0,0 +1,64 @@
+package com.company.bench;
+
+import com.company.metrics.ConfusionMatrix;
+import com.company.metrics.ScoreCurve;
+import com.company.metrics.ScoreHistogram;
+import com.company.tree.Tree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of predictions of a tree over all rows: confusion matrix, exact ROC and PR curves and their
+ * histogram approximation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class MetricsBenchmarks {
+  private static final int HISTOGRAM_BINS = 1000;
+
+  private int classCount;
+  private int[] actualClassCodes;
+  private int[] predictedClassCodes;
+  private double[] scores;
+  private boolean[] positives;
+
+  @Setup(Level.Trial)
+  public void predict(SyntheticState synthetic) {
+    var data = synthetic.data;
+    var tree = Tree.makeTree(data, synthetic.allowedColumnIndexes, 0.5);
+    int baseClass = tree.compile().baseClass();
+    classCount = data.classDictionary().size();
+    predictedClassCodes = tree.predict(data).classCodes();
+    scores = tree.baseClassProbabilities(data);
+    actualClassCodes = new int[data.size()];
+    positives = new boolean[data.size()];
+    for (int row = 0; row < data.size(); row++) {
+      actualClassCodes[row] = data.classCode(row);
+      positives[row] = actualClassCodes[row] == baseClass;
+    }
+  }
+
+  @Benchmark
+  public ConfusionMatrix confusion() {
+    return ConfusionMatrix.of(classCount, actualClassCodes, predictedClassCodes);
+  }
+
+  @Benchmark
+  public double rocPr() {
+    var curve = ScoreCurve.of(scores, positives);
+    return curve.rocAuc() + curve.prAuc();
+  }
+
+  @Benchmark
+  public double histogram() {
+    var histogram = new ScoreHistogram(HISTOGRAM_BINS);
+    histogram.addAll(scores, positives);
+    var curve = histogram.curve();
+    return curve.rocAuc() + curve.prAuc();
+  }
+}
@@ -0,0 +1,68 @@
+package com.company.bench;
+
+import com.company.data.ColumnarFile;
+import com.company.data.Dataset;
+import com.company.tree.LevelWiseTrainer;
+import com.company.tree.Predictions;
+import com.company.tree.Tree;
+import com.company.tree.TreeConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Training and scoring over a columnar file of the dataset: level-wise passes over the file and trees
+ * grown on its mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class OutOfCoreBenchmarks {
+  private Path path;
+  private ColumnarFile file;
+  private Dataset mapped;
+  private Tree mappedTree;
+  private TreeConfig offHeapConfig;
+
+  @Setup(Level.Trial)
+  public void write(SyntheticState synthetic) throws IOException {
+    path = Files.createTempFile("bench-", ".dcol");
+    ColumnarFile.write(synthetic.data, path);
+    file = ColumnarFile.open(path);
+    mapped = file.map();
+    mappedTree = Tree.makeTree(mapped, synthetic.allowedColumnIndexes, 0.5);
+    offHeapConfig = TreeConfig.defaults().withOffHeapRows(true);
+  }
+
+  @TearDown(Level.Trial)
+  public void delete() throws IOException {
+    file.close();
+    Files.deleteIfExists(path);
+  }
+
+  @Benchmark
+  public Tree levelWise(SyntheticState synthetic) throws IOException {
+    return LevelWiseTrainer.makeTree(file, synthetic.allowedColumnIndexes, 0.5, TreeConfig.defaults());
+  }
+
+  @Benchmark
+  public Tree mapped(SyntheticState synthetic) {
+    return Tree.makeTree(mapped, synthetic.allowedColumnIndexes, 0.5);
+  }
+
+  @Benchmark
+  public Tree offHeap(SyntheticState synthetic) {
+    return Tree.makeTree(mapped, synthetic.allowedColumnIndexes, 0.5, offHeapConfig);
+  }
+
+  @Benchmark
+  public Predictions predictMapped() {
+    return mappedTree.predict(mapped);
+  }
+}
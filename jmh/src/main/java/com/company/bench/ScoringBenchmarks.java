@@ -0,0 +1,76 @@
+package com.company.bench;
+
+import com.company.monitoring.TreeStats;
+import com.company.tree.Forest;
+import com.company.tree.PredictionCache;
+import com.company.tree.Predictions;
+import com.company.tree.Tree;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring of all rows of the dataset row by row, in batches, through a prediction cache and by a forest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScoringBenchmarks {
+  private static final int FOREST_TREES = 16;
+  private static final int PREDICTION_CACHE_CAPACITY = 1 << 16;
+
+  private Tree tree;
+  private Tree listenedTree;
+  private PredictionCache cache;
+  private Forest forest;
+
+  @Setup(Level.Trial)
+  public void train(SyntheticState synthetic) {
+    tree = Tree.makeTree(synthetic.data, synthetic.allowedColumnIndexes, 0.5);
+    listenedTree = tree.withListener(new TreeStats());
+    cache = new PredictionCache(tree.compile(), PREDICTION_CACHE_CAPACITY);
+    forest = Forest.makeForest(
+      synthetic.data, FOREST_TREES, SyntheticState.ALLOWED_COLUMNS, 0.5, SyntheticState.SEED
+    );
+  }
+
+  @Benchmark
+  public int rows(SyntheticState synthetic) {
+    int sum = 0;
+    for (int row = 0; row < synthetic.data.size(); row++) {
+      sum += tree.predictClass(synthetic.data, row);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public Predictions batch(SyntheticState synthetic) {
+    return tree.predict(synthetic.data);
+  }
+
+  @Benchmark
+  public int cached(SyntheticState synthetic) {
+    int sum = 0;
+    for (int row = 0; row < synthetic.data.size(); row++) {
+      sum += cache.predictClass(synthetic.data, row);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public int listened(SyntheticState synthetic) {
+    int sum = 0;
+    for (int row = 0; row < synthetic.data.size(); row++) {
+      sum += listenedTree.predictClass(synthetic.data, row);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public Predictions forestBatch(SyntheticState synthetic) {
+    return forest.predict(synthetic.data);
+  }
+}
@@ -0,0 +1,43 @@
+package com.company.bench;
+
+import com.company.tree.Node;
+import com.company.tree.PackedCodes;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split search at the root over all columns, scanning columns and counting from packed codes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SplitSearchBenchmarks {
+  private PackedCodes packedCodes;
+
+  @Setup(Level.Trial)
+  public void pack(SyntheticState synthetic) {
+    packedCodes = PackedCodes.of(synthetic.data, synthetic.allColumns);
+    if (packedCodes == null) {
+      throw new IllegalStateException("Expect codes to fit packed cells, but cardinality is " + synthetic.cardinality);
+    }
+  }
+
+  @Benchmark
+  public int scan(SyntheticState synthetic) {
+    return Node.findBestColumn(synthetic.data, synthetic.allColumns);
+  }
+
+  @Benchmark
+  public int packed(SyntheticState synthetic) {
+    return Node.findBestColumn(synthetic.data, synthetic.allColumns, packedCodes);
+  }
+
+  @Benchmark
+  public PackedCodes packedCodesBuild(SyntheticState synthetic) {
+    return PackedCodes.of(synthetic.data, synthetic.allColumns);
+  }
+}
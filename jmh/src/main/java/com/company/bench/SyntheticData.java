@@ -0,0 +1,61 @@
+package com.company.bench;
+
+import com.company.data.Dataset;
+import com.company.data.Dictionary;
+
+import java.util.*;
+
+/**
+ * Generator of categorical datasets shaped like the mushroom one: uniformly distributed values and
+ * two classes which depend on a few columns with some noise, so trees have something to learn.
+ */
+public class SyntheticData {
+  private static final double NOISE = 0.05;
+  private static final int INFORMATIVE_COLUMNS = 3;
+
+  private SyntheticData() {
+  }
+
+  public static Dataset generate(int rows, int columnsCount, int cardinality, long seed) {
+    if (cardinality < 1 || cardinality > Dictionary.MAX_SIZE) {
+      throw new IllegalArgumentException(
+        "Cardinality must be in [1, " + Dictionary.MAX_SIZE + "], but get " + cardinality
+      );
+    }
+    var random = new Random(seed);
+
+    var values = new ArrayList<String>(cardinality);
+    for (int value = 0; value < cardinality; value++) {
+      values.add("v" + value);
+    }
+    var columnNames = new ArrayList<String>(columnsCount);
+    var dictionaries = new Dictionary[columnsCount];
+    var columns = new byte[columnsCount][rows];
+    for (int column = 0; column < columnsCount; column++) {
+      columnNames.add("column-" + column);
+      dictionaries[column] = Dictionary.of(values);
+      var codes = columns[column];
+      for (int row = 0; row < rows; row++) {
+        codes[row] = (byte) random.nextInt(cardinality);
+      }
+    }
+
+    var classes = new byte[rows];
+    int informativeColumns = Math.min(INFORMATIVE_COLUMNS, columnsCount);
+    for (int row = 0; row < rows; row++) {
+      int sum = 0;
+      for (int column = 0; column < informativeColumns; column++) {
+        sum += columns[column][row];
+      }
+      int classCode = sum * 2 >= informativeColumns * (cardinality - 1) ? 1 : 0;
+      if (random.nextDouble() < NOISE) {
+        classCode = 1 - classCode;
+      }
+      classes[row] = (byte) classCode;
+    }
+
+    return Dataset.of(
+      Collections.unmodifiableList(columnNames), dictionaries, Dictionary.of(List.of("e", "p")), columns, classes
+    );
+  }
+}
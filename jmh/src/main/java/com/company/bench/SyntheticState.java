@@ -0,0 +1,40 @@
+package com.company.bench;
+
+import com.company.data.Dataset;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Synthetic dataset of a trial, shared by the benchmarks of all areas. Sizes and cardinality are JMH
+ * parameters, so they can be narrowed with {@code -p rows=1000000 -p cardinality=8}.
+ */
+@State(Scope.Benchmark)
+public class SyntheticState {
+  static final long SEED = 42;
+  static final int ALLOWED_COLUMNS = 5;
+  private static final int COLUMNS = 22;
+
+  @Param({"1000000", "10000000"})
+  public int rows;
+
+  // count of values of every column
+  @Param({"2", "8", "32"})
+  public int cardinality;
+
+  Dataset data;
+  int[] allColumns;
+  // columns trees are grown on
+  Set<Integer> allowedColumnIndexes;
+  int[] allowedColumns;
+
+  @Setup(Level.Trial)
+  public void generate() {
+    data = SyntheticData.generate(rows, COLUMNS, cardinality, SEED);
+    allColumns = IntStream.range(0, data.columnCount()).toArray();
+    allowedColumns = IntStream.range(0, Math.min(ALLOWED_COLUMNS, data.columnCount())).toArray();
+    allowedColumnIndexes = Arrays.stream(allowedColumns).boxed().collect(Collectors.toSet());
+  }
+}
@@ -0,0 +1,72 @@
+package com.company.bench;
+
+import com.company.data.ValueIndex;
+import com.company.tree.CrossValidation;
+import com.company.tree.Forest;
+import com.company.tree.Tree;
+import com.company.tree.TreeConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Growth of trees by every strategy, of forests and cross validation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrainingBenchmarks {
+  private static final int FOREST_TREES = 16;
+  private static final int CV_FOLDS = 5;
+
+  private TreeConfig parallelConfig;
+  private TreeConfig packedConfig;
+  private TreeConfig indexedConfig;
+  private CrossValidation crossValidation;
+
+  @Setup(Level.Trial)
+  public void prepare(SyntheticState synthetic) {
+    parallelConfig = TreeConfig.defaults().withParallelism(true, 4096).withParallelColumnScoring(true);
+    packedConfig = TreeConfig.defaults().withPackedCounting(true);
+    indexedConfig = TreeConfig.defaults().withValueIndex(ValueIndex.of(synthetic.data));
+    crossValidation = CrossValidation.of(synthetic.data, CV_FOLDS, SyntheticState.SEED);
+  }
+
+  @Benchmark
+  public Tree tree(SyntheticState synthetic) {
+    return Tree.makeTree(synthetic.data, synthetic.allowedColumnIndexes, 0.5);
+  }
+
+  @Benchmark
+  public Tree treeParallel(SyntheticState synthetic) {
+    return Tree.makeTree(synthetic.data, synthetic.allowedColumnIndexes, 0.5, parallelConfig);
+  }
+
+  @Benchmark
+  public Tree treePacked(SyntheticState synthetic) {
+    return Tree.makeTree(synthetic.data, synthetic.allowedColumnIndexes, 0.5, packedConfig);
+  }
+
+  @Benchmark
+  public Tree treeBitmap(SyntheticState synthetic) {
+    return Tree.makeTree(synthetic.data, synthetic.allowedColumnIndexes, 0.5, indexedConfig);
+  }
+
+  @Benchmark
+  public ValueIndex valueIndexBuild(SyntheticState synthetic) {
+    return ValueIndex.of(synthetic.data);
+  }
+
+  @Benchmark
+  public Forest forest(SyntheticState synthetic) {
+    return Forest.makeForest(synthetic.data, FOREST_TREES, SyntheticState.ALLOWED_COLUMNS, 0.5, SyntheticState.SEED);
+  }
+
+  @Benchmark
+  public double crossValidation(SyntheticState synthetic) {
+    return crossValidation.evaluate(synthetic.allowedColumns, 0.5, TreeConfig.defaults()).meanAccuracy();
+  }
+}
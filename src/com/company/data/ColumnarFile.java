@@ -0,0 +1,335 @@
+package com.company.data;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * On-disk encoded columnar dataset, the format datasets bigger than the heap are trained from.
+ * All numbers are big-endian:
+ * <pre>
+ *   int magic "DCOL", int version, long dataOffset, long rows
+ *   int columnsCount, columnsCount × (string name, int valuesCount, valuesCount × string value)
+ *   int classesCount, classesCount × string class
+ *   zero padding up to dataOffset, which is a multiple of {@value #ALIGNMENT}
+ *   byte[rows] class codes, then byte[rows] codes of every column in order
+ * </pre>
+ * where string is int length followed by UTF-8 bytes. Every column is a contiguous run of bytes, so a pass
+ * over some columns reads only them, and the class column starts page aligned for memory mapping.
+ */
+public class ColumnarFile implements Closeable {
+  private static final int MAGIC = 0x44434F4C; // "DCOL"
+  private static final int VERSION = 1;
+  private static final int ALIGNMENT = 4096;
+  private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long rows;
+  private final long dataOffset;
+  private final List<String> columnNames;
+  private final List<Dictionary> dictionaries;
+  private final Dictionary classDictionary;
+
+  private ColumnarFile(
+    Path path,
+    FileChannel channel,
+    long rows,
+    long dataOffset,
+    List<String> columnNames,
+    List<Dictionary> dictionaries,
+    Dictionary classDictionary
+  ) {
+    this.path = path;
+    this.channel = channel;
+    this.rows = rows;
+    this.dataOffset = dataOffset;
+    this.columnNames = columnNames;
+    this.dictionaries = dictionaries;
+    this.classDictionary = classDictionary;
+  }
+
+  public static ColumnarFile open(Path path) throws IOException {
+    var channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+      try (input) {
+        if (input.readInt() != MAGIC) {
+          throw new IllegalArgumentException("File " + path + " is not a columnar dataset");
+        }
+        int version = input.readInt();
+        if (version != VERSION) {
+          throw new IllegalArgumentException("Unsupported dataset version " + version + ", expect " + VERSION);
+        }
+        long dataOffset = input.readLong();
+        long rows = input.readLong();
+        int columnsCount = input.readInt();
+        var columnNames = new ArrayList<String>(columnsCount);
+        var dictionaries = new ArrayList<Dictionary>(columnsCount);
+        for (int column = 0; column < columnsCount; column++) {
+          columnNames.add(readString(input));
+          dictionaries.add(readDictionary(input));
+        }
+        var classDictionary = readDictionary(input);
+
+        long expectedSize = dataOffset + rows * (columnsCount + 1);
+        if (channel.size() != expectedSize) {
+          throw new IllegalArgumentException(
+            "File " + path + " must have " + expectedSize + " bytes, but has " + channel.size()
+          );
+        }
+        return new ColumnarFile(
+          path, channel, rows, dataOffset, Collections.unmodifiableList(columnNames),
+          Collections.unmodifiableList(dictionaries), classDictionary
+        );
+      }
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public static void write(Dataset data, Path path) throws IOException {
+    var dictionaries = new ArrayList<Dictionary>(data.columnCount());
+    for (int column = 0; column < data.columnCount(); column++) {
+      dictionaries.add(data.dictionary(column));
+    }
+    try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      writeHeader(output, data.size(), data.columnNames(), dictionaries, data.classDictionary());
+      var buffer = new byte[COPY_BUFFER_SIZE];
+      for (int column = -1; column < data.columnCount(); column++) {
+        for (int from = 0; from < data.size(); from += buffer.length) {
+          int length = Math.min(buffer.length, data.size() - from);
+          for (int i = 0; i < length; i++) {
+            buffer[i] = (byte) (column == -1 ? data.classCode(from + i) : data.value(column, from + i));
+          }
+          output.write(buffer, 0, length);
+        }
+      }
+    }
+  }
+
+  /**
+   * Converts a comma separated file into the columnar format without holding it in memory: codes of every
+   * column are spilled into their own temporary file next to the result and appended after the header.
+   *
+   * @param columnNames names of all columns of the file including class column
+   */
+  public static void convertCsv(Path csvPath, List<String> columnNames, int classColumnIndex, Path path)
+    throws IOException {
+    int columnsSize = columnNames.size();
+    var spills = new Path[columnsSize];
+    var outputs = new OutputStream[columnsSize];
+    var sinks = new CsvReader.ColumnSink[columnsSize];
+    try {
+      for (int i = 0; i < columnsSize; i++) {
+        spills[i] = Files.createTempFile(path.toAbsolutePath().getParent(), "column-" + i + "-", ".spill");
+        var output = new BufferedOutputStream(Files.newOutputStream(spills[i]), COPY_BUFFER_SIZE);
+        outputs[i] = output;
+        sinks[i] = output::write;
+      }
+      long[] rows = new long[1];
+      var classSink = sinks[classColumnIndex];
+      sinks[classColumnIndex] = code -> {
+        rows[0]++;
+        classSink.add(code);
+      };
+
+      var fileDictionaries = CsvReader.encode(csvPath, sinks);
+      for (var output : outputs) {
+        output.close();
+      }
+
+      var attrColumnNames = new ArrayList<String>(columnsSize - 1);
+      var dictionaries = new ArrayList<Dictionary>(columnsSize - 1);
+      var order = new ArrayList<Path>(columnsSize);
+      order.add(spills[classColumnIndex]);
+      for (int i = 0; i < columnsSize; i++) {
+        if (i == classColumnIndex)
+          continue;
+        attrColumnNames.add(columnNames.get(i));
+        dictionaries.add(fileDictionaries[i]);
+        order.add(spills[i]);
+      }
+
+      try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+        writeHeader(output, rows[0], attrColumnNames, dictionaries, fileDictionaries[classColumnIndex]);
+        for (var spill : order) {
+          Files.copy(spill, output);
+        }
+      }
+    } finally {
+      for (int i = 0; i < columnsSize; i++) {
+        if (outputs[i] != null) {
+          outputs[i].close();
+        }
+        if (spills[i] != null) {
+          Files.deleteIfExists(spills[i]);
+        }
+      }
+    }
+  }
+
+  private static void writeHeader(
+    DataOutputStream output, long rows, List<String> columnNames, List<Dictionary> dictionaries,
+    Dictionary classDictionary
+  ) throws IOException {
+    var header = new ByteArrayOutputStream();
+    var headerOutput = new DataOutputStream(header);
+    headerOutput.writeLong(rows);
+    headerOutput.writeInt(columnNames.size());
+    for (int column = 0; column < columnNames.size(); column++) {
+      writeString(headerOutput, columnNames.get(column));
+      writeDictionary(headerOutput, dictionaries.get(column));
+    }
+    writeDictionary(headerOutput, classDictionary);
+
+    long headerSize = Integer.BYTES * 2 + Long.BYTES + header.size();
+    long dataOffset = (headerSize + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeLong(dataOffset);
+    header.writeTo(output);
+    for (long i = headerSize; i < dataOffset; i++) {
+      output.write(0);
+    }
+  }
+
+  /**
+   * Reads codes of rows [fromRow, fromRow + buffer.remaining()) of the column into the buffer.
+   *
+   * @param column attribute column, -1 for the class column
+   */
+  public void read(int column, long fromRow, ByteBuffer buffer) throws IOException {
+    int length = buffer.remaining();
+    if (fromRow < 0 || fromRow + length > rows) {
+      throw new IndexOutOfBoundsException(
+        "Rows [" + fromRow + ", " + (fromRow + length) + ") are out of [0, " + rows + ")"
+      );
+    }
+    long position = columnOffset(column) + fromRow;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of " + path);
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * @param column attribute column, -1 for the class column
+   * @return offset of the first code of the column in the file
+   */
+  public long columnOffset(int column) {
+    if (column < -1 || column >= columnNames.size()) {
+      throw new IndexOutOfBoundsException("Column " + column + " is out of [-1, " + columnNames.size() + ")");
+    }
+    return dataOffset + (column + 1) * rows;
+  }
+
+  /**
+   * Loads the whole file into memory.
+   */
+  public Dataset toDataset() throws IOException {
+    if (rows > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Dataset of " + rows + " rows doesn't fit in memory");
+    }
+    int size = (int) rows;
+    var classes = new byte[size];
+    read(-1, 0, ByteBuffer.wrap(classes));
+    var columns = new byte[columnNames.size()][];
+    for (int column = 0; column < columns.length; column++) {
+      columns[column] = new byte[size];
+      read(column, 0, ByteBuffer.wrap(columns[column]));
+    }
+    return Dataset.of(columnNames, dictionaries.toArray(new Dictionary[0]), classDictionary, columns, classes);
+  }
+
+  /**
+   * Maps the file read-only into memory. Codes stay off-heap in the page cache, so the dataset costs the heap
+   * only its dictionaries, and a file converted once is reused by later runs without parsing. The mapping
+   * outlives {@link #close()} and is released when the dataset becomes unreachable.
+   */
+  public Dataset map() throws IOException {
+    if (rows > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Dataset of " + rows + " rows doesn't fit in one mapping per column");
+    }
+    var classes = channel.map(FileChannel.MapMode.READ_ONLY, columnOffset(-1), rows);
+    var columns = new ByteBuffer[columnNames.size()];
+    for (int column = 0; column < columns.length; column++) {
+      columns[column] = channel.map(FileChannel.MapMode.READ_ONLY, columnOffset(column), rows);
+    }
+    return Dataset.of(columnNames, dictionaries.toArray(new Dictionary[0]), classDictionary, columns, classes);
+  }
+
+  public Path path() {
+    return path;
+  }
+
+  public FileChannel channel() {
+    return channel;
+  }
+
+  public long size() {
+    return rows;
+  }
+
+  public int columnCount() {
+    return columnNames.size();
+  }
+
+  public List<String> columnNames() {
+    return columnNames;
+  }
+
+  public Dictionary dictionary(int column) {
+    return dictionaries.get(column);
+  }
+
+  public List<Dictionary> dictionaries() {
+    return dictionaries;
+  }
+
+  public Dictionary classDictionary() {
+    return classDictionary;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(DataInputStream input) throws IOException {
+    var bytes = new byte[input.readInt()];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeDictionary(DataOutputStream output, Dictionary dictionary) throws IOException {
+    output.writeInt(dictionary.size());
+    for (var value : dictionary.values()) {
+      writeString(output, value);
+    }
+  }
+
+  private static Dictionary readDictionary(DataInputStream input) throws IOException {
+    int size = input.readInt();
+    var values = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readString(input));
+    }
+    return Dictionary.of(values);
+  }
+}
@@ -0,0 +1,255 @@
+package com.company.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Streaming reader of comma separated categorical files. The file is read through a buffered channel,
+ * fields are tokenized by hand and encoded into dictionaries on the fly, so only distinct values are ever
+ * turned into strings. The count of rows is discovered by a first pass which only counts lines, so every
+ * column is encoded straight into an array of its final size and codes are never copied.
+ */
+public class CsvReader {
+  private static final int BUFFER_SIZE = 1 << 20;
+  private static final int MAX_ROWS = Integer.MAX_VALUE - 8;
+
+  private CsvReader() {
+  }
+
+  /**
+   * @param columnNames names of all columns of the file including class column
+   */
+  public static Dataset read(Path path, List<String> columnNames, int classColumnIndex) throws IOException {
+    int columnsSize = columnNames.size();
+    int rows = countRows(path);
+    var columns = new ArrayColumn[columnsSize];
+    for (int i = 0; i < columnsSize; i++) {
+      columns[i] = new ArrayColumn(rows);
+    }
+    var fileDictionaries = encode(path, columns);
+
+    var dictionaries = new Dictionary[columnsSize - 1];
+    var attrColumns = new byte[columnsSize - 1][];
+    var attrColumnNames = new ArrayList<String>(columnsSize - 1);
+    int attrColumn = 0;
+    for (int i = 0; i < columnsSize; i++) {
+      if (i == classColumnIndex)
+        continue;
+      dictionaries[attrColumn] = fileDictionaries[i];
+      attrColumns[attrColumn] = columns[i].codes();
+      attrColumnNames.add(columnNames.get(i));
+      attrColumn++;
+    }
+
+    return Dataset.of(
+      Collections.unmodifiableList(attrColumnNames), dictionaries,
+      fileDictionaries[classColumnIndex], attrColumns, columns[classColumnIndex].codes()
+    );
+  }
+
+  /**
+   * Encodes every column of the file into its sink in row order, so the file may be bigger than memory.
+   *
+   * @param sinks receivers of codes of all columns of the file including class column
+   * @return dictionaries of the columns
+   */
+  static Dictionary[] encode(Path path, ColumnSink[] sinks) throws IOException {
+    int columnsSize = sinks.length;
+    var encoders = new ColumnEncoder[columnsSize];
+    for (int i = 0; i < columnsSize; i++) {
+      encoders[i] = new ColumnEncoder(sinks[i]);
+    }
+
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      var bytes = buffer.array();
+      var token = new byte[64];
+      int tokenSize = 0;
+      int column = 0;
+      long line = 1;
+      boolean emptyLine = true;
+
+      while (channel.read(buffer) != -1) {
+        int limit = buffer.position();
+        for (int i = 0; i < limit; i++) {
+          byte b = bytes[i];
+          if (b == ',') {
+            checkColumn(column, columnsSize, line);
+            encoders[column].add(token, tokenSize);
+            column++;
+            tokenSize = 0;
+            emptyLine = false;
+          } else if (b == '\n') {
+            if (!emptyLine || tokenSize > 0) {
+              checkColumn(column, columnsSize, line);
+              encoders[column].add(token, tokenSize);
+              checkRowEnd(column + 1, columnsSize, line);
+            }
+            column = 0;
+            tokenSize = 0;
+            emptyLine = true;
+            line++;
+          } else if (b != '\r') {
+            if (tokenSize == token.length) {
+              token = Arrays.copyOf(token, tokenSize * 2);
+            }
+            token[tokenSize++] = b;
+          }
+        }
+        buffer.clear();
+      }
+
+      if (!emptyLine || tokenSize > 0) {
+        checkColumn(column, columnsSize, line);
+        encoders[column].add(token, tokenSize);
+        checkRowEnd(column + 1, columnsSize, line);
+      }
+    }
+
+    var dictionaries = new Dictionary[columnsSize];
+    for (int i = 0; i < columnsSize; i++) {
+      dictionaries[i] = encoders[i].dictionary;
+    }
+    return dictionaries;
+  }
+
+  /**
+   * Counts rows as {@link #encode} finds them, lines with anything but line breaks.
+   */
+  private static int countRows(Path path) throws IOException {
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      var buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      var bytes = buffer.array();
+      long rows = 0;
+      boolean emptyLine = true;
+
+      while (channel.read(buffer) != -1) {
+        int limit = buffer.position();
+        for (int i = 0; i < limit; i++) {
+          byte b = bytes[i];
+          if (b == '\n') {
+            if (!emptyLine) {
+              rows++;
+            }
+            emptyLine = true;
+          } else if (b != '\r') {
+            emptyLine = false;
+          }
+        }
+        buffer.clear();
+      }
+      if (!emptyLine) {
+        rows++;
+      }
+
+      if (rows > MAX_ROWS) {
+        throw new IllegalArgumentException("Expect at most " + MAX_ROWS + " rows, but get " + rows);
+      }
+      return (int) rows;
+    }
+  }
+
+  private static void checkColumn(int column, int columnsSize, long line) {
+    if (column >= columnsSize) {
+      throw new IllegalArgumentException("Expect " + columnsSize + " values, but get more at line " + line);
+    }
+  }
+
+  private static void checkRowEnd(int valuesSize, int columnsSize, long line) {
+    if (valuesSize != columnsSize) {
+      throw new IllegalArgumentException(
+        "Expect " + columnsSize + " values, but get " + valuesSize + " at line " + line
+      );
+    }
+  }
+
+  /**
+   * Receiver of codes of one column in row order.
+   */
+  interface ColumnSink {
+    void add(byte code) throws IOException;
+  }
+
+  /**
+   * Dictionary encoder of one column which passes codes to its sink.
+   */
+  private static class ColumnEncoder {
+    private final Dictionary dictionary = new Dictionary();
+    // codes of one byte values by the byte, -1 if not seen yet
+    private final int[] singleByteCodes = new int[256];
+    // values longer than one byte by their codes
+    private final ArrayList<byte[]> multiByteValues = new ArrayList<>();
+    private final ColumnSink sink;
+
+    ColumnEncoder(ColumnSink sink) {
+      this.sink = sink;
+      Arrays.fill(singleByteCodes, -1);
+    }
+
+    void add(byte[] token, int tokenSize) throws IOException {
+      sink.add((byte) encode(token, tokenSize));
+    }
+
+    private int encode(byte[] token, int tokenSize) {
+      if (tokenSize == 1) {
+        int code = singleByteCodes[token[0] & 0xFF];
+        if (code == -1) {
+          code = intern(token, tokenSize);
+          singleByteCodes[token[0] & 0xFF] = code;
+        }
+        return code;
+      }
+
+      for (int code = 0; code < multiByteValues.size(); code++) {
+        var value = multiByteValues.get(code);
+        if (value != null && Arrays.equals(value, 0, value.length, token, 0, tokenSize)) {
+          return code;
+        }
+      }
+      int code = intern(token, tokenSize);
+      while (multiByteValues.size() <= code) {
+        multiByteValues.add(null);
+      }
+      multiByteValues.set(code, Arrays.copyOf(token, tokenSize));
+      return code;
+    }
+
+    private int intern(byte[] token, int tokenSize) {
+      return dictionary.intern(new String(token, 0, tokenSize, StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Codes of one column collected into an array of the count of rows found beforehand.
+   */
+  private static class ArrayColumn implements ColumnSink {
+    private final byte[] codes;
+    private int size;
+
+    ArrayColumn(int rows) {
+      this.codes = new byte[rows];
+    }
+
+    @Override
+    public void add(byte code) {
+      if (size == codes.length) {
+        throw new IllegalStateException("Expect " + codes.length + " rows, but get more, the file changed while read");
+      }
+      codes[size++] = code;
+    }
+
+    byte[] codes() {
+      if (size != codes.length) {
+        throw new IllegalStateException(
+          "Expect " + codes.length + " rows, but get " + size + ", the file changed while read"
+        );
+      }
+      return codes;
+    }
+  }
+}
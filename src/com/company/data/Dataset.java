@@ -0,0 +1,244 @@
+package com.company.data;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Column-oriented categorical dataset. Every column is interned into its own {@link Dictionary}
+ * and stored as a buffer of byte codes, class column is kept apart from attribute columns.
+ * <p>
+ * Buffers either wrap heap arrays or live off-heap, e.g. mapped from a {@link ColumnarFile}, readers don't
+ * tell the difference. Buffers are only read by absolute index, so one dataset is safe to share between
+ * threads.
+ */
+public class Dataset {
+  private final List<String> columnNames;
+  private final Dictionary[] dictionaries;
+  private final Dictionary classDictionary;
+  private final ByteBuffer[] columns;
+  private final ByteBuffer classes;
+  private final int size;
+
+  private Dataset(
+    List<String> columnNames, Dictionary[] dictionaries, Dictionary classDictionary, ByteBuffer[] columns,
+    ByteBuffer classes
+  ) {
+    this.columnNames = columnNames;
+    this.dictionaries = dictionaries;
+    this.classDictionary = classDictionary;
+    this.columns = columns;
+    this.classes = classes;
+    this.size = classes.limit();
+  }
+
+  private Dataset(
+    List<String> columnNames, Dictionary[] dictionaries, Dictionary classDictionary, byte[][] columns, byte[] classes
+  ) {
+    this(columnNames, dictionaries, classDictionary, wrap(columns), ByteBuffer.wrap(classes));
+  }
+
+  /**
+   * @param columns codes of attribute columns, the i-th column is encoded by the i-th dictionary
+   * @param classes codes of classes encoded by classDictionary
+   */
+  public static Dataset of(
+    List<String> columnNames, Dictionary[] dictionaries, Dictionary classDictionary, byte[][] columns, byte[] classes
+  ) {
+    if (columnNames.size() != columns.length || dictionaries.length != columns.length) {
+      throw new IllegalArgumentException(
+        "Expect " + columns.length + " column names and dictionaries, but get " +
+          columnNames.size() + " and " + dictionaries.length
+      );
+    }
+    for (var column : columns) {
+      if (column.length != classes.length) {
+        throw new IllegalArgumentException("Expect " + classes.length + " values, but get " + column.length);
+      }
+    }
+    return new Dataset(columnNames, dictionaries, classDictionary, columns, classes);
+  }
+
+  /**
+   * Dataset over buffers which may live off-heap, codes are read from index 0 to the limit of each buffer.
+   *
+   * @param columns codes of attribute columns, the i-th column is encoded by the i-th dictionary
+   * @param classes codes of classes encoded by classDictionary
+   */
+  public static Dataset of(
+    List<String> columnNames, Dictionary[] dictionaries, Dictionary classDictionary, ByteBuffer[] columns,
+    ByteBuffer classes
+  ) {
+    if (columnNames.size() != columns.length || dictionaries.length != columns.length) {
+      throw new IllegalArgumentException(
+        "Expect " + columns.length + " column names and dictionaries, but get " +
+          columnNames.size() + " and " + dictionaries.length
+      );
+    }
+    for (var column : columns) {
+      if (column.limit() != classes.limit()) {
+        throw new IllegalArgumentException("Expect " + classes.limit() + " values, but get " + column.limit());
+      }
+    }
+    return new Dataset(columnNames, dictionaries, classDictionary, columns, classes);
+  }
+
+  /**
+   * @param columnNames names of all columns including class column
+   * @param rows        rows with all columns including class column
+   */
+  public static Dataset fromRows(List<String> columnNames, List<? extends List<String>> rows, int classColumnIndex) {
+    int columnsSize = columnNames.size();
+    int size = rows.size();
+
+    var attrColumnNames = new ArrayList<String>(columnsSize - 1);
+    for (int i = 0; i < columnsSize; i++) {
+      if (i != classColumnIndex)
+        attrColumnNames.add(columnNames.get(i));
+    }
+
+    var dictionaries = new Dictionary[columnsSize - 1];
+    var columns = new byte[columnsSize - 1][size];
+    for (int i = 0; i < dictionaries.length; i++) {
+      dictionaries[i] = new Dictionary();
+    }
+    var classDictionary = new Dictionary();
+    var classes = new byte[size];
+
+    for (int row = 0; row < size; row++) {
+      var values = rows.get(row);
+      if (values.size() != columnsSize) {
+        throw new IllegalArgumentException("Expect " + columnsSize + " values, but get " + values.size());
+      }
+      int column = 0;
+      for (int i = 0; i < columnsSize; i++) {
+        if (i == classColumnIndex) {
+          classes[row] = (byte) classDictionary.intern(values.get(i));
+        } else {
+          columns[column][row] = (byte) dictionaries[column].intern(values.get(i));
+          column++;
+        }
+      }
+    }
+
+    return new Dataset(Collections.unmodifiableList(attrColumnNames), dictionaries, classDictionary, columns, classes);
+  }
+
+  /**
+   * @return dataset with given rows which shares dictionaries with this one
+   */
+  public Dataset select(int[] rows) {
+    var selectedColumns = new byte[columns.length][rows.length];
+    var selectedClasses = new byte[rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      selectedClasses[i] = classes.get(rows[i]);
+    }
+    for (int column = 0; column < columns.length; column++) {
+      var source = columns[column];
+      var target = selectedColumns[column];
+      for (int i = 0; i < rows.length; i++) {
+        target[i] = source.get(rows[i]);
+      }
+    }
+    return new Dataset(columnNames, dictionaries, classDictionary, selectedColumns, selectedClasses);
+  }
+
+  /**
+   * Codes the same rows with other dictionaries of the same columns, e.g. of a model read from a file, so a
+   * dataset read on its own can be scored by it. Attribute values absent in a dictionary get its unknown code.
+   *
+   * @return this dataset if it is already encoded with the dictionaries
+   * @throws IllegalArgumentException if a class is absent in classDictionary
+   */
+  public Dataset encodeWith(List<Dictionary> dictionaries, Dictionary classDictionary) {
+    if (dictionaries.size() != columns.length) {
+      throw new IllegalArgumentException("Expect " + columns.length + " dictionaries, but get " + dictionaries.size());
+    }
+    boolean same = classDictionary == this.classDictionary;
+    for (int column = 0; column < columns.length; column++) {
+      same &= dictionaries.get(column) == this.dictionaries[column];
+    }
+    if (same) {
+      return this;
+    }
+
+    var encodedColumns = new byte[columns.length][size];
+    for (int column = 0; column < columns.length; column++) {
+      var codes = recode(this.dictionaries[column], dictionaries.get(column));
+      var source = columns[column];
+      var target = encodedColumns[column];
+      for (int row = 0; row < size; row++) {
+        target[row] = codes[source.get(row) & 0xFF];
+      }
+    }
+    var classCodes = recode(this.classDictionary, classDictionary);
+    var encodedClasses = new byte[size];
+    for (int row = 0; row < size; row++) {
+      int classCode = classes.get(row) & 0xFF;
+      if ((classCodes[classCode] & 0xFF) == classDictionary.unknownCode()) {
+        var value = classCode == this.classDictionary.unknownCode()
+          ? "an unknown class"
+          : "'" + this.classDictionary.valueOf(classCode) + "'";
+        throw new IllegalArgumentException("Expect a class of " + classDictionary.values() + ", but get " + value);
+      }
+      encodedClasses[row] = classCodes[classCode];
+    }
+    return new Dataset(
+      columnNames, dictionaries.toArray(new Dictionary[0]), classDictionary, encodedColumns, encodedClasses
+    );
+  }
+
+  /**
+   * @return code in the target dictionary of every code of the source one, the unknown code stays unknown
+   */
+  private static byte[] recode(Dictionary source, Dictionary target) {
+    var codes = new byte[source.unknownCode() + 1];
+    for (int code = 0; code < source.size(); code++) {
+      codes[code] = (byte) target.encode(source.valueOf(code));
+    }
+    codes[source.unknownCode()] = (byte) target.unknownCode();
+    return codes;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int columnCount() {
+    return columns.length;
+  }
+
+  public List<String> columnNames() {
+    return columnNames;
+  }
+
+  public int value(int column, int row) {
+    return columns[column].get(row) & 0xFF;
+  }
+
+  public int classCode(int row) {
+    return classes.get(row) & 0xFF;
+  }
+
+  /**
+   * @return whether codes are stored outside of the Java heap
+   */
+  public boolean isOffHeap() {
+    return classes.isDirect();
+  }
+
+  public Dictionary dictionary(int column) {
+    return dictionaries[column];
+  }
+
+  public Dictionary classDictionary() {
+    return classDictionary;
+  }
+
+  private static ByteBuffer[] wrap(byte[][] columns) {
+    var result = new ByteBuffer[columns.length];
+    for (int column = 0; column < columns.length; column++) {
+      result[column] = ByteBuffer.wrap(columns[column]);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,92 @@
+package com.company.data;
+
+import java.util.*;
+
+/**
+ * Codes of the values of a column in the order they are met. Two codes have a meaning beyond their value:
+ * the code of {@value #MISSING_VALUE}, which marks a missing value, and {@link #unknownCode}, one past the
+ * last value, which encodes values absent in the dictionary at scoring time. Trees grown in memory never split
+ * rows by either, so compiled trees route both to the class distribution of the node. The out-of-core
+ * {@code LevelWiseTrainer} counts the missing value as a value of its own and may grow a child for it, which
+ * compiled trees then follow.
+ */
+public class Dictionary {
+  // codes are stored as unsigned bytes, the last one is left for the unknown code
+  public static final int MAX_SIZE = 255;
+  public static final String MISSING_VALUE = "?";
+
+  private final ArrayList<String> values;
+  private final HashMap<String, Integer> codesByValue;
+
+  Dictionary() {
+    this.values = new ArrayList<>();
+    this.codesByValue = new HashMap<>();
+  }
+
+  /**
+   * @return dictionary which gives codes to the values in their order
+   */
+  public static Dictionary of(List<String> values) {
+    var dictionary = new Dictionary();
+    for (var value : values) {
+      int size = dictionary.size();
+      if (dictionary.intern(value) != size) {
+        throw new IllegalArgumentException("Value '" + value + "' is repeated");
+      }
+    }
+    return dictionary;
+  }
+
+  int intern(String value) {
+    var code = codesByValue.get(value);
+    if (code != null) {
+      return code;
+    }
+    if (values.size() == MAX_SIZE) {
+      throw new IllegalArgumentException("Dictionary can't hold more than " + MAX_SIZE + " values");
+    }
+    values.add(value);
+    codesByValue.put(value, values.size() - 1);
+    return values.size() - 1;
+  }
+
+  /**
+   * @return code of the value or -1 if the value wasn't seen
+   */
+  public int codeOf(String value) {
+    return codesByValue.getOrDefault(value, -1);
+  }
+
+  /**
+   * @return code of the value, {@link #unknownCode} if the value wasn't seen
+   */
+  public int encode(String value) {
+    return codesByValue.getOrDefault(value, values.size());
+  }
+
+  /**
+   * @return code of {@value #MISSING_VALUE} or -1 if no value is missing
+   */
+  public int missingCode() {
+    return codeOf(MISSING_VALUE);
+  }
+
+  /**
+   * @return code of values absent in the dictionary, which is its size
+   */
+  public int unknownCode() {
+    return values.size();
+  }
+
+  public String valueOf(int code) {
+    return values.get(code);
+  }
+
+  public int size() {
+    return values.size();
+  }
+
+  public List<String> values() {
+    return Collections.unmodifiableList(values);
+  }
+}
@@ -0,0 +1,374 @@
+package com.company.data;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of row indexes in the manner of Roaring bitmaps. Rows are grouped by their high
+ * 16 bits into containers of up to 65536 rows: a container of at most {@value #ARRAY_MAX_SIZE} rows is a
+ * sorted array of the low 16 bits, a denser one is a bitmap of 1024 words. Intersections work container by
+ * container, bitmaps meet word by word, so the cardinality of an intersection of dense sets is a run of
+ * AND and popcount instructions.
+ */
+public class RowBitmap {
+  private static final int ARRAY_MAX_SIZE = 4096;
+  private static final int CONTAINER_BITS = 16;
+  private static final int CONTAINER_SIZE = 1 << CONTAINER_BITS;
+  private static final int BITMAP_WORDS = CONTAINER_SIZE / Long.SIZE;
+  private static final RowBitmap EMPTY = new RowBitmap(new char[0], new Container[0], 0);
+
+  // high 16 bits of rows of every container, ascending
+  private final char[] keys;
+  private final Container[] containers;
+  private final int cardinality;
+
+  private RowBitmap(char[] keys, Container[] containers, int cardinality) {
+    this.keys = keys;
+    this.containers = containers;
+    this.cardinality = cardinality;
+  }
+
+  /**
+   * @param rows ascending distinct rows
+   */
+  public static RowBitmap of(int[] rows) {
+    return of(rows, 0, rows.length);
+  }
+
+  /**
+   * @param rows ascending distinct rows in [from, to) of the array
+   */
+  public static RowBitmap of(int[] rows, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (rows[i] < 0 || (i > from && rows[i] <= rows[i - 1])) {
+        throw new IllegalArgumentException("Expect ascending non-negative rows, but get " + rows[i] + " at " + i);
+      }
+    }
+    var keys = new char[0];
+    var containers = new Container[0];
+    int count = 0;
+    for (int i = from; i < to; ) {
+      int key = rows[i] >>> CONTAINER_BITS;
+      int end = i;
+      while (end < to && rows[end] >>> CONTAINER_BITS == key) {
+        end++;
+      }
+      var values = new char[end - i];
+      for (int j = i; j < end; j++) {
+        values[j - i] = (char) rows[j];
+      }
+      if (count == keys.length) {
+        keys = Arrays.copyOf(keys, Math.max(4, count * 2));
+        containers = Arrays.copyOf(containers, keys.length);
+      }
+      keys[count] = (char) key;
+      containers[count] = values.length <= ARRAY_MAX_SIZE ? new ArrayContainer(values) : BitmapContainer.of(values);
+      count++;
+      i = end;
+    }
+    return new RowBitmap(Arrays.copyOf(keys, count), Arrays.copyOf(containers, count), to - from);
+  }
+
+  /**
+   * @return rows [0, size)
+   */
+  public static RowBitmap range(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Size must be non-negative, but get " + size);
+    }
+    int count = (size + CONTAINER_SIZE - 1) >>> CONTAINER_BITS;
+    var keys = new char[count];
+    var containers = new Container[count];
+    for (int key = 0; key < count; key++) {
+      int rows = Math.min(CONTAINER_SIZE, size - (key << CONTAINER_BITS));
+      var words = new long[BITMAP_WORDS];
+      Arrays.fill(words, 0, rows / Long.SIZE, -1L);
+      if (rows % Long.SIZE != 0) {
+        words[rows / Long.SIZE] = (1L << rows) - 1;
+      }
+      var container = new BitmapContainer(words, rows);
+      keys[key] = (char) key;
+      containers[key] = rows <= ARRAY_MAX_SIZE ? container.toArray() : container;
+    }
+    return new RowBitmap(keys, containers, size);
+  }
+
+  public static RowBitmap empty() {
+    return EMPTY;
+  }
+
+  public int cardinality() {
+    return cardinality;
+  }
+
+  public boolean isEmpty() {
+    return cardinality == 0;
+  }
+
+  public boolean contains(int row) {
+    int idx = Arrays.binarySearch(keys, (char) (row >>> CONTAINER_BITS));
+    return row >= 0 && idx >= 0 && containers[idx].contains((char) row);
+  }
+
+  public RowBitmap and(RowBitmap other) {
+    var resultKeys = new char[Math.min(keys.length, other.keys.length)];
+    var resultContainers = new Container[resultKeys.length];
+    int count = 0;
+    int resultCardinality = 0;
+    for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        var container = containers[i].and(other.containers[j]);
+        if (container != null) {
+          resultKeys[count] = keys[i];
+          resultContainers[count++] = container;
+          resultCardinality += container.cardinality();
+        }
+        i++;
+        j++;
+      }
+    }
+    if (resultCardinality == 0) {
+      return EMPTY;
+    }
+    return new RowBitmap(Arrays.copyOf(resultKeys, count), Arrays.copyOf(resultContainers, count), resultCardinality);
+  }
+
+  /**
+   * @return cardinality of the intersection without building it
+   */
+  public int andCardinality(RowBitmap other) {
+    int result = 0;
+    for (int i = 0, j = 0; i < keys.length && j < other.keys.length; ) {
+      if (keys[i] < other.keys[j]) {
+        i++;
+      } else if (keys[i] > other.keys[j]) {
+        j++;
+      } else {
+        result += containers[i].andCardinality(other.containers[j]);
+        i++;
+        j++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return rows in ascending order
+   */
+  public int[] toArray() {
+    var result = new int[cardinality];
+    int size = 0;
+    for (int i = 0; i < keys.length; i++) {
+      size = containers[i].copyTo(keys[i] << CONTAINER_BITS, result, size);
+    }
+    return result;
+  }
+
+  /**
+   * @return bytes taken by containers
+   */
+  public long sizeInBytes() {
+    long size = 0;
+    for (var container : containers) {
+      size += container.sizeInBytes();
+    }
+    return size + (long) keys.length * Character.BYTES;
+  }
+
+  private abstract static class Container {
+    abstract int cardinality();
+
+    abstract boolean contains(char value);
+
+    /**
+     * @return the intersection, null if it is empty
+     */
+    abstract Container and(Container other);
+
+    abstract int andCardinality(Container other);
+
+    /**
+     * @return offset after the copied rows
+     */
+    abstract int copyTo(int high, int[] rows, int offset);
+
+    abstract long sizeInBytes();
+  }
+
+  private static class ArrayContainer extends Container {
+    private final char[] values;
+
+    ArrayContainer(char[] values) {
+      this.values = values;
+    }
+
+    @Override
+    int cardinality() {
+      return values.length;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return Arrays.binarySearch(values, value) >= 0;
+    }
+
+    @Override
+    Container and(Container other) {
+      var result = new char[values.length];
+      int size = 0;
+      if (other instanceof BitmapContainer) {
+        var words = ((BitmapContainer) other).words;
+        for (char value : values) {
+          if ((words[value >>> 6] & (1L << value)) != 0) {
+            result[size++] = value;
+          }
+        }
+      } else {
+        var otherValues = ((ArrayContainer) other).values;
+        for (int i = 0, j = 0; i < values.length && j < otherValues.length; ) {
+          if (values[i] < otherValues[j]) {
+            i++;
+          } else if (values[i] > otherValues[j]) {
+            j++;
+          } else {
+            result[size++] = values[i];
+            i++;
+            j++;
+          }
+        }
+      }
+      return size == 0 ? null : new ArrayContainer(Arrays.copyOf(result, size));
+    }
+
+    @Override
+    int andCardinality(Container other) {
+      int count = 0;
+      if (other instanceof BitmapContainer) {
+        var words = ((BitmapContainer) other).words;
+        for (char value : values) {
+          count += (int) (words[value >>> 6] >>> value) & 1;
+        }
+      } else {
+        var otherValues = ((ArrayContainer) other).values;
+        for (int i = 0, j = 0; i < values.length && j < otherValues.length; ) {
+          if (values[i] < otherValues[j]) {
+            i++;
+          } else if (values[i] > otherValues[j]) {
+            j++;
+          } else {
+            count++;
+            i++;
+            j++;
+          }
+        }
+      }
+      return count;
+    }
+
+    @Override
+    int copyTo(int high, int[] rows, int offset) {
+      for (char value : values) {
+        rows[offset++] = high | value;
+      }
+      return offset;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return (long) values.length * Character.BYTES;
+    }
+  }
+
+  private static class BitmapContainer extends Container {
+    private final long[] words;
+    private final int cardinality;
+
+    BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    static BitmapContainer of(char[] values) {
+      var words = new long[BITMAP_WORDS];
+      for (char value : values) {
+        words[value >>> 6] |= 1L << value;
+      }
+      return new BitmapContainer(words, values.length);
+    }
+
+    @Override
+    int cardinality() {
+      return cardinality;
+    }
+
+    @Override
+    boolean contains(char value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container and(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.and(this);
+      }
+      var otherWords = ((BitmapContainer) other).words;
+      var result = new long[BITMAP_WORDS];
+      int count = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        result[i] = words[i] & otherWords[i];
+        count += Long.bitCount(result[i]);
+      }
+      if (count == 0) {
+        return null;
+      }
+      var container = new BitmapContainer(result, count);
+      return count <= ARRAY_MAX_SIZE ? container.toArray() : container;
+    }
+
+    @Override
+    int andCardinality(Container other) {
+      if (other instanceof ArrayContainer) {
+        return other.andCardinality(this);
+      }
+      var otherWords = ((BitmapContainer) other).words;
+      int count = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        count += Long.bitCount(words[i] & otherWords[i]);
+      }
+      return count;
+    }
+
+    @Override
+    int copyTo(int high, int[] rows, int offset) {
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long word = words[i];
+        while (word != 0) {
+          rows[offset++] = high | (i << 6) | Long.numberOfTrailingZeros(word);
+          word &= word - 1;
+        }
+      }
+      return offset;
+    }
+
+    @Override
+    long sizeInBytes() {
+      return (long) BITMAP_WORDS * Long.BYTES;
+    }
+
+    ArrayContainer toArray() {
+      var values = new char[cardinality];
+      int size = 0;
+      for (int i = 0; i < BITMAP_WORDS; i++) {
+        long word = words[i];
+        while (word != 0) {
+          values[size++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+          word &= word - 1;
+        }
+      }
+      return new ArrayContainer(values);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package com.company.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded sampling of rows of a dataset as index arrays, rows themselves are never copied. Splits keep both
+ * parts in ascending row order, so reading a part scans every column forward.
+ * <p>
+ * Splits are drawn by selection sampling: rows are visited once in order and each is taken with the
+ * probability of the rows still needed among the rows still left, which gives exact part sizes without a
+ * shuffle. Stratified splits keep such a pair of counters per class, so every class is split in the ratio
+ * up to rounding.
+ */
+public class Sampling {
+  private Sampling() {
+  }
+
+  /**
+   * @param trainRatio share of rows in the train part
+   */
+  public static Split split(int size, double trainRatio, SplittableRandom random) {
+    checkRatio(trainRatio);
+    var classes = new int[size];
+    return split(classes, new int[]{size}, trainRatio, random);
+  }
+
+  /**
+   * Split with the ratio of every class of the dataset, rounded per class.
+   */
+  public static Split stratifiedSplit(Dataset data, double trainRatio, SplittableRandom random) {
+    checkRatio(trainRatio);
+    var classes = new int[data.size()];
+    var classSizes = new int[data.classDictionary().size()];
+    for (int row = 0; row < classes.length; row++) {
+      classes[row] = data.classCode(row);
+      classSizes[classes[row]]++;
+    }
+    return split(classes, classSizes, trainRatio, random);
+  }
+
+  private static Split split(int[] classes, int[] classSizes, double trainRatio, SplittableRandom random) {
+    var needed = new int[classSizes.length];
+    var left = classSizes.clone();
+    int trainSize = 0;
+    for (int classCode = 0; classCode < classSizes.length; classCode++) {
+      needed[classCode] = (int) Math.round(classSizes[classCode] * trainRatio);
+      trainSize += needed[classCode];
+    }
+
+    var train = new int[trainSize];
+    var test = new int[classes.length - trainSize];
+    int trainCount = 0;
+    int testCount = 0;
+    for (int row = 0; row < classes.length; row++) {
+      int classCode = classes[row];
+      if (random.nextInt(left[classCode]) < needed[classCode]) {
+        train[trainCount++] = row;
+        needed[classCode]--;
+      } else {
+        test[testCount++] = row;
+      }
+      left[classCode]--;
+    }
+    return new Split(train, test);
+  }
+
+  /**
+   * Stratified k-fold assignment: rows of every class are shuffled and dealt to the folds in turn, so the
+   * sizes of a class in any two folds differ by one at most.
+   *
+   * @return fold of every row
+   */
+  public static int[] stratifiedFolds(Dataset data, int folds, SplittableRandom random) {
+    if (folds < 1 || folds > data.size()) {
+      throw new IllegalArgumentException("Folds must be in [1, " + data.size() + "], but get " + folds);
+    }
+    var byClass = classOrder(data);
+    // rows of every class are consecutive in byClass, shuffling within a class keeps them so
+    var classOffsets = new int[data.classDictionary().size() + 1];
+    for (int i = 0; i < byClass.length; i++) {
+      classOffsets[data.classCode(byClass[i]) + 1]++;
+    }
+    for (int classCode = 0; classCode + 1 < classOffsets.length; classCode++) {
+      classOffsets[classCode + 1] += classOffsets[classCode];
+      shuffle(byClass, classOffsets[classCode], classOffsets[classCode + 1], random);
+    }
+
+    var result = new int[data.size()];
+    // the deal continues across classes, so small classes don't all start at fold 0
+    for (int i = 0; i < byClass.length; i++) {
+      result[byClass[i]] = i % folds;
+    }
+    return result;
+  }
+
+  /**
+   * @return size rows drawn uniformly with replacement from [0, size)
+   */
+  public static int[] bootstrap(int size, SplittableRandom random) {
+    var rows = new int[size];
+    for (int i = 0; i < size; i++) {
+      rows[i] = random.nextInt(size);
+    }
+    return rows;
+  }
+
+  /**
+   * @return count distinct rows of [0, size) in ascending order, drawn uniformly
+   */
+  public static int[] sample(int size, int count, SplittableRandom random) {
+    if (count < 0 || count > size) {
+      throw new IllegalArgumentException("Count must be in [0, " + size + "], but get " + count);
+    }
+    var rows = new int[count];
+    int taken = 0;
+    for (int row = 0; row < size && taken < count; row++) {
+      if (random.nextInt(size - row) < count - taken) {
+        rows[taken++] = row;
+      }
+    }
+    return rows;
+  }
+
+  /**
+   * Fisher-Yates shuffle of [from, to) of the array in place.
+   */
+  public static void shuffle(int[] rows, int from, int to, SplittableRandom random) {
+    for (int i = to - 1; i > from; i--) {
+      int j = from + random.nextInt(i - from + 1);
+      int tmp = rows[i];
+      rows[i] = rows[j];
+      rows[j] = tmp;
+    }
+  }
+
+  /**
+   * @return rows ordered by class, ascending within a class
+   */
+  private static int[] classOrder(Dataset data) {
+    var offsets = new int[data.classDictionary().size() + 1];
+    for (int row = 0; row < data.size(); row++) {
+      offsets[data.classCode(row) + 1]++;
+    }
+    for (int classCode = 1; classCode < offsets.length; classCode++) {
+      offsets[classCode] += offsets[classCode - 1];
+    }
+    var result = new int[data.size()];
+    for (int row = 0; row < data.size(); row++) {
+      result[offsets[data.classCode(row)]++] = row;
+    }
+    return result;
+  }
+
+  private static void checkRatio(double trainRatio) {
+    if (!(trainRatio >= 0. && trainRatio <= 1.)) {
+      throw new IllegalArgumentException("Train ratio must be in [0, 1], but get " + trainRatio);
+    }
+  }
+
+  /**
+   * Rows of the train and test parts of a split, both ascending.
+   */
+  public static class Split {
+    private final int[] train;
+    private final int[] test;
+
+    Split(int[] train, int[] test) {
+      this.train = train;
+      this.test = test;
+    }
+
+    /**
+     * @return the rows themselves, growing a tree over them reorders the array
+     */
+    public int[] train() {
+      return train;
+    }
+
+    public int[] test() {
+      return test;
+    }
+  }
+
+  /**
+   * Uniform sample of a fixed size of a stream of unknown length, by Li's algorithm L: after the reservoir is
+   * full, the count of items to skip until the next replacement is drawn directly, so random numbers are
+   * drawn O(capacity * log(seen / capacity)) times rather than once per item.
+   */
+  public static class Reservoir<T> {
+    private final int capacity;
+    private final SplittableRandom random;
+    private final List<T> items;
+    private long seen;
+    private double w;
+    // items to pass before the next replacement
+    private long skip;
+
+    public Reservoir(int capacity, SplittableRandom random) {
+      if (capacity < 1) {
+        throw new IllegalArgumentException("Capacity must be positive, but get " + capacity);
+      }
+      this.capacity = capacity;
+      this.random = random;
+      this.items = new ArrayList<>(capacity);
+    }
+
+    public void add(T item) {
+      seen++;
+      if (items.size() < capacity) {
+        items.add(item);
+        if (items.size() == capacity) {
+          w = Math.exp(Math.log(nextOpenDouble()) / capacity);
+          nextSkip();
+        }
+        return;
+      }
+      if (skip > 0) {
+        skip--;
+        return;
+      }
+      items.set(random.nextInt(capacity), item);
+      w *= Math.exp(Math.log(nextOpenDouble()) / capacity);
+      nextSkip();
+    }
+
+    /**
+     * @return count of items added
+     */
+    public long seen() {
+      return seen;
+    }
+
+    /**
+     * @return the sample, in no particular order, all items if fewer than capacity were added
+     */
+    public List<T> sample() {
+      return Collections.unmodifiableList(new ArrayList<>(items));
+    }
+
+    private void nextSkip() {
+      double skipped = Math.floor(Math.log(nextOpenDouble()) / Math.log1p(-w));
+      skip = skipped < Long.MAX_VALUE ? (long) skipped : Long.MAX_VALUE;
+    }
+
+    // in (0, 1), so logarithms stay finite
+    private double nextOpenDouble() {
+      double value;
+      do {
+        value = random.nextDouble();
+      } while (value == 0.);
+      return value;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package com.company.data;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index of a dataset: the rows of every (column, value code) pair and of every class as
+ * {@link RowBitmap}s. It is built once in two passes over every column and takes about a bit per row and
+ * value for dense values, far less for rare ones.
+ */
+public class ValueIndex {
+  private final int size;
+  // rows[column][value code]
+  private final RowBitmap[][] rows;
+  private final RowBitmap[] classRows;
+  private final RowBitmap allRows;
+
+  private ValueIndex(int size, RowBitmap[][] rows, RowBitmap[] classRows) {
+    this.size = size;
+    this.rows = rows;
+    this.classRows = classRows;
+    this.allRows = RowBitmap.range(size);
+  }
+
+  public static ValueIndex of(Dataset data) {
+    var rows = new RowBitmap[data.columnCount()][];
+    var groupedRows = new int[data.size()];
+    for (int column = 0; column < data.columnCount(); column++) {
+      int valuesColumn = column;
+      rows[column] = index(
+        data.dictionary(column).size(), data.size(), row -> data.value(valuesColumn, row), groupedRows
+      );
+    }
+    var classRows = index(data.classDictionary().size(), data.size(), data::classCode, groupedRows);
+    return new ValueIndex(data.size(), rows, classRows);
+  }
+
+  /**
+   * Groups rows by code with a counting sort, rows of a code stay ascending.
+   */
+  private static RowBitmap[] index(int codesSize, int size, Codes codes, int[] groupedRows) {
+    var offsets = new int[codesSize + 1];
+    for (int row = 0; row < size; row++) {
+      offsets[codes.code(row) + 1]++;
+    }
+    for (int code = 0; code < codesSize; code++) {
+      offsets[code + 1] += offsets[code];
+    }
+    var positions = Arrays.copyOf(offsets, codesSize);
+    for (int row = 0; row < size; row++) {
+      groupedRows[positions[codes.code(row)]++] = row;
+    }
+    var result = new RowBitmap[codesSize];
+    for (int code = 0; code < codesSize; code++) {
+      result[code] = RowBitmap.of(groupedRows, offsets[code], offsets[code + 1]);
+    }
+    return result;
+  }
+
+  public RowBitmap rows(int column, int value) {
+    return rows[column][value];
+  }
+
+  public RowBitmap classRows(int classCode) {
+    return classRows[classCode];
+  }
+
+  /**
+   * @return rows [0, size)
+   */
+  public RowBitmap allRows() {
+    return allRows;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int columnCount() {
+    return rows.length;
+  }
+
+  /**
+   * @return bytes taken by bitmaps of all columns and classes
+   */
+  public long sizeInBytes() {
+    long result = 0;
+    for (var columnRows : rows) {
+      for (var valueRows : columnRows) {
+        result += valueRows.sizeInBytes();
+      }
+    }
+    for (var bitmap : classRows) {
+      result += bitmap.sizeInBytes();
+    }
+    return result;
+  }
+
+  private interface Codes {
+    int code(int row);
+  }
+}
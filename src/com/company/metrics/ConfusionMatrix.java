@@ -0,0 +1,104 @@
+package com.company.metrics;
+
+/**
+ * Counts of rows by actual and predicted class codes. Matrices of parts of the data can be merged.
+ */
+public class ConfusionMatrix {
+  private final int classCount;
+  // counts[actual * classCount + predicted]
+  private final long[] counts;
+
+  public ConfusionMatrix(int classCount) {
+    if (classCount < 1) {
+      throw new IllegalArgumentException("Expect positive count of classes, but get " + classCount);
+    }
+    this.classCount = classCount;
+    this.counts = new long[classCount * classCount];
+  }
+
+  public static ConfusionMatrix of(int classCount, int[] actualClassCodes, int[] predictedClassCodes) {
+    if (actualClassCodes.length != predictedClassCodes.length) {
+      throw new IllegalArgumentException(
+        "Expect actual and predicted classes of the same size, but get " +
+          actualClassCodes.length + " and " + predictedClassCodes.length
+      );
+    }
+    var matrix = new ConfusionMatrix(classCount);
+    for (int i = 0; i < actualClassCodes.length; i++) {
+      matrix.add(actualClassCodes[i], predictedClassCodes[i]);
+    }
+    return matrix;
+  }
+
+  public void add(int actualClassCode, int predictedClassCode) {
+    counts[actualClassCode * classCount + predictedClassCode]++;
+  }
+
+  public void merge(ConfusionMatrix other) {
+    if (other.classCount != classCount) {
+      throw new IllegalArgumentException(
+        "Expect matrix of " + classCount + " classes, but get " + other.classCount
+      );
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] += other.counts[i];
+    }
+  }
+
+  public int classCount() {
+    return classCount;
+  }
+
+  public long count(int actualClassCode, int predictedClassCode) {
+    return counts[actualClassCode * classCount + predictedClassCode];
+  }
+
+  public long total() {
+    long total = 0;
+    for (long count : counts) {
+      total += count;
+    }
+    return total;
+  }
+
+  public long actualCount(int classCode) {
+    long count = 0;
+    for (int predicted = 0; predicted < classCount; predicted++) {
+      count += count(classCode, predicted);
+    }
+    return count;
+  }
+
+  public long predictedCount(int classCode) {
+    long count = 0;
+    for (int actual = 0; actual < classCount; actual++) {
+      count += count(actual, classCode);
+    }
+    return count;
+  }
+
+  public double accuracy() {
+    long correct = 0;
+    for (int classCode = 0; classCode < classCount; classCode++) {
+      correct += count(classCode, classCode);
+    }
+    long total = total();
+    return total == 0 ? 0. : (double) correct / total;
+  }
+
+  /**
+   * @return share of right predictions among rows predicted as the class, NaN if the class is never predicted
+   */
+  public double precision(int classCode) {
+    long predicted = predictedCount(classCode);
+    return predicted == 0 ? Double.NaN : (double) count(classCode, classCode) / predicted;
+  }
+
+  /**
+   * @return share of rows of the class predicted right, NaN if there are no rows of the class
+   */
+  public double recall(int classCode) {
+    long actual = actualCount(classCode);
+    return actual == 0 ? Double.NaN : (double) count(classCode, classCode) / actual;
+  }
+}
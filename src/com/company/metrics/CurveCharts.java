@@ -0,0 +1,57 @@
+package com.company.metrics;
+
+import org.knowm.xchart.BitmapEncoder;
+import org.knowm.xchart.QuickChart;
+import org.knowm.xchart.XYChart;
+import org.knowm.xchart.style.lines.SeriesLines;
+import org.knowm.xchart.style.markers.SeriesMarkers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Optional rendering of curves into PNG files. Charts are drawn into images by {@link BitmapEncoder}, no
+ * window is opened, so it works on headless machines. Nothing else in the metrics package needs XChart.
+ */
+public class CurveCharts {
+  private CurveCharts() {
+  }
+
+  public static XYChart rocChart(ScoreCurve curve) {
+    XYChart chart = QuickChart.getChart(
+      "AUC ROC", "FPR", "TPR", "border", new double[]{0., 1.}, new double[]{0., 1.}
+    );
+    var series = chart.addSeries(
+      String.format("curve (%.4f)", curve.rocAuc()), curve.falsePositiveRates(), curve.truePositiveRates()
+    );
+    series.setMarker(SeriesMarkers.NONE);
+    return chart;
+  }
+
+  public static XYChart prChart(ScoreCurve curve) {
+    XYChart chart = QuickChart.getChart(
+      "AUC PR", "Recall", "Precision", "stub", new double[]{0., 1.}, new double[]{0., 1.}
+    );
+    var stubSeries = chart.getSeriesMap().get("stub");
+    stubSeries.setShowInLegend(false);
+    stubSeries.setLineStyle(SeriesLines.NONE);
+    stubSeries.setMarker(SeriesMarkers.NONE);
+    var series = chart.addSeries(
+      String.format("curve (%.4f)", curve.prAuc()), curve.truePositiveRates(), curve.precisions()
+    );
+    series.setMarker(SeriesMarkers.NONE);
+    return chart;
+  }
+
+  public static void writeRocPng(ScoreCurve curve, Path path) throws IOException {
+    writePng(rocChart(curve), path);
+  }
+
+  public static void writePrPng(ScoreCurve curve, Path path) throws IOException {
+    writePng(prChart(curve), path);
+  }
+
+  private static void writePng(XYChart chart, Path path) throws IOException {
+    BitmapEncoder.saveBitmap(chart, path.toString(), BitmapEncoder.BitmapFormat.PNG);
+  }
+}
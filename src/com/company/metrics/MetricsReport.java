@@ -0,0 +1,82 @@
+package com.company.metrics;
+
+import com.company.data.Dictionary;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Plain text report of accuracy, confusion matrix, per-class precision and recall and areas under the
+ * curves of the base class score.
+ */
+public class MetricsReport {
+  private final Dictionary classDictionary;
+  private final ConfusionMatrix matrix;
+  private final ScoreCurve curve;
+  private final int baseClass;
+
+  /**
+   * @param curve curve of the base class score, may be null
+   */
+  public MetricsReport(Dictionary classDictionary, ConfusionMatrix matrix, ScoreCurve curve, int baseClass) {
+    if (matrix.classCount() != classDictionary.size()) {
+      throw new IllegalArgumentException(
+        "Expect matrix of " + classDictionary.size() + " classes, but get " + matrix.classCount()
+      );
+    }
+    this.classDictionary = classDictionary;
+    this.matrix = matrix;
+    this.curve = curve;
+    this.baseClass = baseClass;
+  }
+
+  public String toText() {
+    var text = new StringBuilder();
+    text.append(format("rows     : %d%n", matrix.total()));
+    text.append(format("accuracy : %.6f%n", matrix.accuracy()));
+    text.append(System.lineSeparator());
+
+    text.append(format("confusion matrix (rows are actual classes, columns are predicted ones)%n"));
+    text.append(format("%12s", ""));
+    for (int predicted = 0; predicted < matrix.classCount(); predicted++) {
+      text.append(format(" %12s", classDictionary.valueOf(predicted)));
+    }
+    text.append(System.lineSeparator());
+    for (int actual = 0; actual < matrix.classCount(); actual++) {
+      text.append(format("%12s", classDictionary.valueOf(actual)));
+      for (int predicted = 0; predicted < matrix.classCount(); predicted++) {
+        text.append(format(" %12d", matrix.count(actual, predicted)));
+      }
+      text.append(System.lineSeparator());
+    }
+    text.append(System.lineSeparator());
+
+    for (int classCode = 0; classCode < matrix.classCount(); classCode++) {
+      if (matrix.actualCount(classCode) == 0 && matrix.predictedCount(classCode) == 0)
+        continue;
+      text.append(format("Class '%s'%n", classDictionary.valueOf(classCode)));
+      text.append(format("precision : %.6f%n", matrix.precision(classCode)));
+      text.append(format("   recall : %.6f%n", matrix.recall(classCode)));
+      text.append(System.lineSeparator());
+    }
+
+    if (curve != null) {
+      text.append(format("Base class '%s' score%n", classDictionary.valueOf(baseClass)));
+      text.append(format("thresholds : %d%n", curve.size() - 1));
+      text.append(format("   ROC AUC : %.6f%n", curve.rocAuc()));
+      text.append(format("    PR AUC : %.6f%n", curve.prAuc()));
+    }
+    return text.toString();
+  }
+
+  public void write(Path path) throws IOException {
+    Files.writeString(path, toText(), StandardCharsets.UTF_8);
+  }
+
+  private static String format(String format, Object... args) {
+    return String.format(Locale.ROOT, format, args);
+  }
+}
@@ -0,0 +1,208 @@
+package com.company.metrics;
+
+import java.util.Arrays;
+
+/**
+ * ROC and PR curves of a binary score: point k is the result of reporting positive for scores at least
+ * {@link #threshold(int) threshold(k)}, point 0 reports nothing. Rows with tied scores are always taken
+ * together, so a tie is a single step of the curve, which makes a diagonal ROC segment.
+ */
+public class ScoreCurve {
+  private final double[] thresholds;
+  // cumulative counts of the points, [0] is the empty point
+  private final long[] truePositives;
+  private final long[] falsePositives;
+  private final long positives;
+  private final long negatives;
+
+  ScoreCurve(double[] thresholds, long[] truePositives, long[] falsePositives) {
+    this.thresholds = thresholds;
+    this.truePositives = truePositives;
+    this.falsePositives = falsePositives;
+    this.positives = truePositives[truePositives.length - 1];
+    this.negatives = falsePositives[falsePositives.length - 1];
+  }
+
+  /**
+   * Scores of positive and negative rows are sorted separately with a primitive sort and merged from
+   * the highest score down, nothing is boxed.
+   */
+  public static ScoreCurve of(double[] scores, boolean[] positives) {
+    if (scores.length != positives.length) {
+      throw new IllegalArgumentException(
+        "Expect scores and labels of the same size, but get " + scores.length + " and " + positives.length
+      );
+    }
+    int positivesSize = 0;
+    for (boolean positive : positives) {
+      if (positive)
+        positivesSize++;
+    }
+    var positiveScores = new double[positivesSize];
+    var negativeScores = new double[scores.length - positivesSize];
+    for (int i = 0, p = 0, n = 0; i < scores.length; i++) {
+      if (positives[i]) {
+        positiveScores[p++] = scores[i];
+      } else {
+        negativeScores[n++] = scores[i];
+      }
+    }
+    Arrays.sort(positiveScores);
+    Arrays.sort(negativeScores);
+
+    var builder = new Builder(scores.length);
+    int p = positiveScores.length - 1;
+    int n = negativeScores.length - 1;
+    while (p >= 0 || n >= 0) {
+      double threshold = p < 0 ? negativeScores[n]
+        : n < 0 ? positiveScores[p]
+        : Math.max(positiveScores[p], negativeScores[n]);
+      long tiedPositives = 0;
+      while (p >= 0 && Double.compare(positiveScores[p], threshold) == 0) {
+        tiedPositives++;
+        p--;
+      }
+      long tiedNegatives = 0;
+      while (n >= 0 && Double.compare(negativeScores[n], threshold) == 0) {
+        tiedNegatives++;
+        n--;
+      }
+      builder.add(threshold, tiedPositives, tiedNegatives);
+    }
+    return builder.build();
+  }
+
+  /**
+   * @return count of points including the empty one
+   */
+  public int size() {
+    return thresholds.length;
+  }
+
+  public double threshold(int point) {
+    return thresholds[point];
+  }
+
+  public long truePositives(int point) {
+    return truePositives[point];
+  }
+
+  public long falsePositives(int point) {
+    return falsePositives[point];
+  }
+
+  public long positives() {
+    return positives;
+  }
+
+  public long negatives() {
+    return negatives;
+  }
+
+  public double truePositiveRate(int point) {
+    return positives == 0 ? 0. : (double) truePositives[point] / positives;
+  }
+
+  public double falsePositiveRate(int point) {
+    return negatives == 0 ? 0. : (double) falsePositives[point] / negatives;
+  }
+
+  public double recall(int point) {
+    return truePositiveRate(point);
+  }
+
+  /**
+   * Precision of the empty point is 1 by convention.
+   */
+  public double precision(int point) {
+    long reported = truePositives[point] + falsePositives[point];
+    return reported == 0 ? 1. : (double) truePositives[point] / reported;
+  }
+
+  /**
+   * Trapezoidal area under the ROC curve, equal to the probability that a random positive is scored above
+   * a random negative with ties counted as a half.
+   */
+  public double rocAuc() {
+    double area = 0.;
+    for (int point = 1; point < thresholds.length; point++) {
+      area += (falsePositiveRate(point) - falsePositiveRate(point - 1))
+        * (truePositiveRate(point) + truePositiveRate(point - 1)) / 2.;
+    }
+    return area;
+  }
+
+  /**
+   * Area under the PR curve as average precision: precision of every point weighted by its recall step,
+   * which doesn't interpolate optimistically between points.
+   */
+  public double prAuc() {
+    double area = 0.;
+    for (int point = 1; point < thresholds.length; point++) {
+      area += (recall(point) - recall(point - 1)) * precision(point);
+    }
+    return area;
+  }
+
+  public double[] falsePositiveRates() {
+    var result = new double[thresholds.length];
+    for (int point = 0; point < result.length; point++) {
+      result[point] = falsePositiveRate(point);
+    }
+    return result;
+  }
+
+  public double[] truePositiveRates() {
+    var result = new double[thresholds.length];
+    for (int point = 0; point < result.length; point++) {
+      result[point] = truePositiveRate(point);
+    }
+    return result;
+  }
+
+  public double[] precisions() {
+    var result = new double[thresholds.length];
+    for (int point = 0; point < result.length; point++) {
+      result[point] = precision(point);
+    }
+    return result;
+  }
+
+  /**
+   * Collects groups of tied scores in descending order of scores.
+   */
+  static class Builder {
+    private double[] thresholds;
+    private long[] truePositives;
+    private long[] falsePositives;
+    private int size = 1;
+
+    /**
+     * @param capacity expected count of groups, the arrays grow when it is exceeded
+     */
+    Builder(int capacity) {
+      thresholds = new double[Math.min(capacity, 1 << 10) + 1];
+      truePositives = new long[thresholds.length];
+      falsePositives = new long[thresholds.length];
+      thresholds[0] = Double.POSITIVE_INFINITY;
+    }
+
+    void add(double threshold, long positives, long negatives) {
+      if (size == thresholds.length) {
+        thresholds = Arrays.copyOf(thresholds, size * 2);
+        truePositives = Arrays.copyOf(truePositives, size * 2);
+        falsePositives = Arrays.copyOf(falsePositives, size * 2);
+      }
+      thresholds[size] = threshold;
+      truePositives[size] = truePositives[size - 1] + positives;
+      falsePositives[size] = falsePositives[size - 1] + negatives;
+      size++;
+    }
+
+    ScoreCurve build() {
+      return new ScoreCurve(
+        Arrays.copyOf(thresholds, size), Arrays.copyOf(truePositives, size), Arrays.copyOf(falsePositives, size)
+      );
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package com.company.metrics;
+
+/**
+ * Streaming counts of positive and negative scores in equal-width bins over [0, 1], for scores that don't
+ * fit in memory at once. Histograms of parts of the data can be counted independently and merged, the curve
+ * of the merged histogram is the curve of the whole data with every bin taken as a group of tied scores.
+ */
+public class ScoreHistogram {
+  private final long[] positiveCounts;
+  private final long[] negativeCounts;
+
+  public ScoreHistogram(int binsSize) {
+    if (binsSize < 1) {
+      throw new IllegalArgumentException("Expect positive count of bins, but get " + binsSize);
+    }
+    this.positiveCounts = new long[binsSize];
+    this.negativeCounts = new long[binsSize];
+  }
+
+  public void add(double score, boolean positive) {
+    if (!(score >= 0. && score <= 1.)) {
+      throw new IllegalArgumentException("Expect score in [0, 1], but get " + score);
+    }
+    int bin = Math.min((int) (score * positiveCounts.length), positiveCounts.length - 1);
+    if (positive) {
+      positiveCounts[bin]++;
+    } else {
+      negativeCounts[bin]++;
+    }
+  }
+
+  public void addAll(double[] scores, boolean[] positives) {
+    if (scores.length != positives.length) {
+      throw new IllegalArgumentException(
+        "Expect scores and labels of the same size, but get " + scores.length + " and " + positives.length
+      );
+    }
+    for (int i = 0; i < scores.length; i++) {
+      add(scores[i], positives[i]);
+    }
+  }
+
+  /**
+   * Adds counts of the other histogram to this one.
+   */
+  public void merge(ScoreHistogram other) {
+    if (other.binsSize() != binsSize()) {
+      throw new IllegalArgumentException(
+        "Expect histogram of " + binsSize() + " bins, but get " + other.binsSize()
+      );
+    }
+    for (int bin = 0; bin < positiveCounts.length; bin++) {
+      positiveCounts[bin] += other.positiveCounts[bin];
+      negativeCounts[bin] += other.negativeCounts[bin];
+    }
+  }
+
+  public int binsSize() {
+    return positiveCounts.length;
+  }
+
+  public long positiveCount(int bin) {
+    return positiveCounts[bin];
+  }
+
+  public long negativeCount(int bin) {
+    return negativeCounts[bin];
+  }
+
+  /**
+   * @return curve with a point per non-empty bin, its threshold is the lower bound of the bin
+   */
+  public ScoreCurve curve() {
+    var builder = new ScoreCurve.Builder(positiveCounts.length);
+    for (int bin = positiveCounts.length - 1; bin >= 0; bin--) {
+      if (positiveCounts[bin] == 0 && negativeCounts[bin] == 0)
+        continue;
+      builder.add((double) bin / positiveCounts.length, positiveCounts[bin], negativeCounts[bin]);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,98 @@
+package com.company.monitoring;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Concurrent log-linear histogram of non-negative values in the manner of HdrHistogram: values below 16 have
+ * their own buckets, every power of two above is split into 16 buckets, so a recorded value is known with a
+ * relative error under 1/16. Buckets are {@link LongAdder}s, so recording from many threads doesn't contend.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final LongAdder[] counts = new LongAdder[BUCKETS];
+  private final LongAdder totalCount = new LongAdder();
+  private final LongAdder sum = new LongAdder();
+  private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  public void record(long value) {
+    if (value < 0) {
+      value = 0;
+    }
+    counts[bucket(value)].increment();
+    totalCount.increment();
+    sum.add(value);
+    max.accumulate(value);
+  }
+
+  public long count() {
+    return totalCount.sum();
+  }
+
+  public long max() {
+    return max.get();
+  }
+
+  public double mean() {
+    long count = count();
+    return count == 0 ? 0. : (double) sum.sum() / count;
+  }
+
+  /**
+   * @param quantile in [0, 1]
+   * @return upper bound of the bucket holding the quantile, 0 if nothing is recorded
+   */
+  public long valueAtQuantile(double quantile) {
+    long count = count();
+    if (count == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(quantile * count));
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i].sum();
+      if (seen >= rank) {
+        return Math.min(upperBound(i), max());
+      }
+    }
+    return max();
+  }
+
+  public void reset() {
+    for (var count : counts) {
+      count.reset();
+    }
+    totalCount.reset();
+    sum.reset();
+    max.reset();
+  }
+
+  static int bucket(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    int subBucket = bucket % SUB_BUCKETS;
+    int shift = exponent - SUB_BUCKET_BITS;
+    long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+    return lowerBound + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,217 @@
+package com.company.monitoring;
+
+import com.company.tree.TreeListener;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener collecting growing and prediction statistics of trees. Counters are {@link LongAdder}s, so one
+ * instance may serve trees grown in parallel and predictions from many threads. Statistics of growing
+ * describe trees before pruning, a node is counted once either as a split or as a leaf.
+ */
+public class TreeStats implements TreeListener, TreeStatsMBean {
+  private static final int MAX_TRACKED_DEPTH = 64;
+  private static final double NANOS_PER_MILLI = 1e6;
+  private static final double NANOS_PER_MICRO = 1e3;
+
+  private final LongAdder treesBuilt = new LongAdder();
+  private final LongAdder trainingNanos = new LongAdder();
+  private final LongAdder splits = new LongAdder();
+  private final LongAdder leaves = new LongAdder();
+  // nodes by depth, the last element counts all deeper nodes
+  private final AtomicLongArray nodesByDepth = new AtomicLongArray(MAX_TRACKED_DEPTH);
+  private final LongAdder rowsPartitioned = new LongAdder();
+  private final LongAdder splitSearchNanos = new LongAdder();
+  private final LongAdder partitionNanos = new LongAdder();
+  private final LongAdder allocatedBytes = new LongAdder();
+
+  private final LongAdder predictCalls = new LongAdder();
+  private final LongAdder predictedRows = new LongAdder();
+  private final LatencyHistogram predictLatency = new LatencyHistogram();
+
+  @Override
+  public void onSplit(
+    int depth, long rows, int columns, long splitSearchNanos, long partitionNanos, long allocatedBytes
+  ) {
+    splits.increment();
+    nodesByDepth.incrementAndGet(Math.min(depth, MAX_TRACKED_DEPTH - 1));
+    rowsPartitioned.add(rows);
+    this.splitSearchNanos.add(splitSearchNanos);
+    this.partitionNanos.add(partitionNanos);
+    if (allocatedBytes > 0) {
+      this.allocatedBytes.add(allocatedBytes);
+    }
+  }
+
+  @Override
+  public void onLeaf(int depth, long rows) {
+    leaves.increment();
+    nodesByDepth.incrementAndGet(Math.min(depth, MAX_TRACKED_DEPTH - 1));
+  }
+
+  @Override
+  public void onTreeBuilt(long rows, long nanos) {
+    treesBuilt.increment();
+    trainingNanos.add(nanos);
+  }
+
+  @Override
+  public void onPredict(int rows, long nanos) {
+    predictCalls.increment();
+    predictedRows.add(rows);
+    predictLatency.record(nanos);
+  }
+
+  /**
+   * Registers the statistics in the platform MBean server under {@code com.company.tree:type=TreeStats,name=...}.
+   */
+  public ObjectName register(String name) throws JMException {
+    var objectName = objectName(name);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+    return objectName;
+  }
+
+  public static void unregister(String name) throws JMException {
+    ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName(name));
+  }
+
+  private static ObjectName objectName(String name) throws JMException {
+    return new ObjectName("com.company.tree:type=TreeStats,name=" + ObjectName.quote(name));
+  }
+
+  @Override
+  public long getTreesBuilt() {
+    return treesBuilt.sum();
+  }
+
+  @Override
+  public double getTrainingMillis() {
+    return trainingNanos.sum() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public long getNodeCount() {
+    return splits.sum() + leaves.sum();
+  }
+
+  @Override
+  public long getSplitCount() {
+    return splits.sum();
+  }
+
+  @Override
+  public long getLeafCount() {
+    return leaves.sum();
+  }
+
+  @Override
+  public int getMaxDepth() {
+    for (int depth = MAX_TRACKED_DEPTH - 1; depth >= 0; depth--) {
+      if (nodesByDepth.get(depth) > 0)
+        return depth;
+    }
+    return 0;
+  }
+
+  @Override
+  public long[] getDepthHistogram() {
+    var result = new long[getMaxDepth() + 1];
+    for (int depth = 0; depth < result.length; depth++) {
+      result[depth] = nodesByDepth.get(depth);
+    }
+    return result;
+  }
+
+  @Override
+  public long getRowsPartitioned() {
+    return rowsPartitioned.sum();
+  }
+
+  @Override
+  public double getSplitSearchMillis() {
+    return splitSearchNanos.sum() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getPartitionMillis() {
+    return partitionNanos.sum() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public long getAllocatedBytes() {
+    return allocatedBytes.sum();
+  }
+
+  @Override
+  public long getPredictCalls() {
+    return predictCalls.sum();
+  }
+
+  @Override
+  public long getPredictedRows() {
+    return predictedRows.sum();
+  }
+
+  @Override
+  public double getPredictLatencyMeanMicros() {
+    return predictLatency.mean() / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getPredictLatencyP50Micros() {
+    return predictLatency.valueAtQuantile(0.5) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getPredictLatencyP99Micros() {
+    return predictLatency.valueAtQuantile(0.99) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getPredictLatencyP999Micros() {
+    return predictLatency.valueAtQuantile(0.999) / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public double getPredictLatencyMaxMicros() {
+    return predictLatency.max() / NANOS_PER_MICRO;
+  }
+
+  @Override
+  public void reset() {
+    treesBuilt.reset();
+    trainingNanos.reset();
+    splits.reset();
+    leaves.reset();
+    for (int depth = 0; depth < MAX_TRACKED_DEPTH; depth++) {
+      nodesByDepth.set(depth, 0);
+    }
+    rowsPartitioned.reset();
+    splitSearchNanos.reset();
+    partitionNanos.reset();
+    allocatedBytes.reset();
+    predictCalls.reset();
+    predictedRows.reset();
+    predictLatency.reset();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+      Locale.ROOT,
+      "trees %d in %.3f ms, nodes %d (splits %d, leaves %d), depth histogram %s, rows partitioned %d, " +
+        "split search %.3f ms, partition %.3f ms, allocated %d bytes; " +
+        "predict calls %d, rows %d, latency mean %.3f us, p50 %.3f us, p99 %.3f us, max %.3f us",
+      getTreesBuilt(), getTrainingMillis(), getNodeCount(), getSplitCount(), getLeafCount(),
+      Arrays.toString(getDepthHistogram()), getRowsPartitioned(), getSplitSearchMillis(), getPartitionMillis(),
+      getAllocatedBytes(), getPredictCalls(), getPredictedRows(), getPredictLatencyMeanMicros(),
+      getPredictLatencyP50Micros(), getPredictLatencyP99Micros(), getPredictLatencyMaxMicros()
+    );
+  }
+}
@@ -0,0 +1,44 @@
+package com.company.monitoring;
+
+/**
+ * JMX view of {@link TreeStats}.
+ */
+public interface TreeStatsMBean {
+  long getTreesBuilt();
+
+  double getTrainingMillis();
+
+  long getNodeCount();
+
+  long getSplitCount();
+
+  long getLeafCount();
+
+  int getMaxDepth();
+
+  long[] getDepthHistogram();
+
+  long getRowsPartitioned();
+
+  double getSplitSearchMillis();
+
+  double getPartitionMillis();
+
+  long getAllocatedBytes();
+
+  long getPredictCalls();
+
+  long getPredictedRows();
+
+  double getPredictLatencyMeanMicros();
+
+  double getPredictLatencyP50Micros();
+
+  double getPredictLatencyP99Micros();
+
+  double getPredictLatencyP999Micros();
+
+  double getPredictLatencyMaxMicros();
+
+  void reset();
+}
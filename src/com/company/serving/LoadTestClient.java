@@ -0,0 +1,155 @@
+package com.company.serving;
+
+import com.company.monitoring.LatencyHistogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test of a {@link ScoringServer} on localhost: every client thread sends single-row
+ * requests one after another, rows are taken round-robin from a CSV dataset without its class column.
+ * Reports throughput and latency quantiles of the measured requests.
+ * <p>
+ * Arguments are {@code key=value} pairs, all optional:
+ * <pre>
+ *   port=8080                       port of the server
+ *   serve=resources/tree.bin        model to start an in-process server with instead of using a running one
+ *   dataset=resources/dataset.csv   rows to send
+ *   class-index=0                   class column of the dataset, dropped from rows
+ *   concurrency=64                  client threads
+ *   warmup=20000                    requests sent before measuring
+ *   requests=200000                 measured requests
+ *   window-micros=200               batching window of the in-process server
+ *   max-batch=256                   max batch of the in-process server
+ * </pre>
+ */
+public class LoadTestClient {
+  private static final double NANOS_PER_MICRO = 1e3;
+  private static final double NANOS_PER_SECOND = 1e9;
+
+  public static void main(String[] args) throws Exception {
+    var options = ScoringServer.parseOptions(args);
+    int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "64"));
+    long warmup = Long.parseLong(options.getOrDefault("warmup", "20000"));
+    long requests = Long.parseLong(options.getOrDefault("requests", "200000"));
+    var rows = readRows(
+      Path.of(options.getOrDefault("dataset", "resources/dataset.csv")),
+      Integer.parseInt(options.getOrDefault("class-index", "0"))
+    );
+
+    ScoringServer server = null;
+    int port = Integer.parseInt(options.getOrDefault("port", "8080"));
+    if (options.containsKey("serve")) {
+      server = ScoringServer.start(
+        Path.of(options.get("serve")), 0,
+        Long.parseLong(options.getOrDefault("window-micros", "200")) * (long) NANOS_PER_MICRO,
+        Integer.parseInt(options.getOrDefault("max-batch", "256"))
+      );
+      port = server.port();
+    }
+
+    try {
+      var uri = URI.create("http://localhost:" + port + "/predict");
+      var executor = PerTaskExecutors.newExecutor("load-test");
+      var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor).build();
+      try {
+        run(client, uri, rows, concurrency, warmup, null);
+        var latency = new LatencyHistogram();
+        long startNanos = System.nanoTime();
+        long errors = run(client, uri, rows, concurrency, requests, latency);
+        double seconds = (System.nanoTime() - startNanos) / NANOS_PER_SECOND;
+
+        System.out.printf(
+          Locale.ROOT,
+          "%d requests by %d %s threads in %.2f s, %.0f req/s, %d errors%n" +
+            "latency us: mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+          requests, concurrency, PerTaskExecutors.isVirtual() ? "virtual" : "platform", seconds,
+          requests / seconds, errors,
+          latency.mean() / NANOS_PER_MICRO, latency.valueAtQuantile(0.5) / NANOS_PER_MICRO,
+          latency.valueAtQuantile(0.99) / NANOS_PER_MICRO, latency.valueAtQuantile(0.999) / NANOS_PER_MICRO,
+          latency.max() / NANOS_PER_MICRO
+        );
+      } finally {
+        executor.shutdown();
+      }
+    } finally {
+      if (server != null) {
+        server.close();
+      }
+    }
+  }
+
+  /**
+   * Sends the requests from concurrency threads.
+   *
+   * @param latency receives latencies of successful requests, null to not measure
+   * @return count of failed requests
+   */
+  private static long run(
+    HttpClient client, URI uri, List<String> rows, int concurrency, long requests, LatencyHistogram latency
+  ) throws InterruptedException, ExecutionException {
+    var next = new AtomicLong();
+    var errors = new LongAdder();
+    var executor = PerTaskExecutors.newExecutor("load-test-client");
+    try {
+      var workers = new ArrayList<Future<?>>(concurrency);
+      for (int i = 0; i < concurrency; i++) {
+        workers.add(executor.submit(() -> {
+          long request;
+          while ((request = next.getAndIncrement()) < requests) {
+            var body = rows.get((int) (request % rows.size()));
+            var httpRequest = HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofString(body)).build();
+            long startNanos = System.nanoTime();
+            try {
+              var response = client.send(httpRequest, HttpResponse.BodyHandlers.ofString());
+              if (response.statusCode() != 200) {
+                errors.increment();
+                continue;
+              }
+            } catch (IOException e) {
+              errors.increment();
+              continue;
+            }
+            if (latency != null) {
+              latency.record(System.nanoTime() - startNanos);
+            }
+          }
+          return null;
+        }));
+      }
+      for (var worker : workers) {
+        worker.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return errors.sum();
+  }
+
+  private static List<String> readRows(Path path, int classColumnIndex) throws IOException {
+    var rows = new ArrayList<String>();
+    for (var line : Files.readAllLines(path)) {
+      if (line.isBlank())
+        continue;
+      var values = new ArrayList<>(List.of(line.split(",", -1)));
+      values.remove(classColumnIndex);
+      rows.add(String.join(",", values));
+    }
+    if (rows.isEmpty()) {
+      throw new IllegalArgumentException("Dataset " + path + " has no rows");
+    }
+    return rows;
+  }
+}
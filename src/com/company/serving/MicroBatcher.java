@@ -0,0 +1,187 @@
+package com.company.serving;
+
+import com.company.data.Dataset;
+import com.company.data.Dictionary;
+import com.company.tree.CompiledTree;
+import com.company.tree.ModelHolder;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects single rows submitted by request threads into batches scored by one call. A batch is closed when
+ * it is full or the window since its first row has passed, so a lone row waits at most the window.
+ * <p>
+ * Rows are encoded by the dispatcher thread with the dictionaries of the model the batch is scored with, so
+ * a model swapped meanwhile is never given codes of another one. Values the model didn't see get the unknown
+ * code, so one odd row is scored by the class distribution of the node it reaches instead of failing a batch.
+ */
+class MicroBatcher implements Closeable {
+  private final ModelHolder<CompiledTree> models;
+  private final long windowNanos;
+  private final int maxBatchSize;
+  private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+  private final Thread dispatcher;
+  private volatile boolean closed;
+
+  MicroBatcher(ModelHolder<CompiledTree> models, long windowNanos, int maxBatchSize) {
+    if (windowNanos < 0) {
+      throw new IllegalArgumentException("Window must be non-negative, but get " + windowNanos);
+    }
+    if (maxBatchSize < 1) {
+      throw new IllegalArgumentException("Max batch size must be positive, but get " + maxBatchSize);
+    }
+    this.models = models;
+    this.windowNanos = windowNanos;
+    this.maxBatchSize = maxBatchSize;
+    this.dispatcher = new Thread(this::dispatch, "micro-batcher");
+    dispatcher.setDaemon(true);
+    dispatcher.start();
+  }
+
+  /**
+   * @param values attribute values of the row in the column order of the model
+   * @return prediction of the row, failed with {@link IllegalArgumentException} if the row doesn't fit the model
+   */
+  CompletableFuture<Prediction> submit(String[] values) {
+    var request = new Request(values);
+    if (closed) {
+      request.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+      return request.result;
+    }
+    queue.add(request);
+    // close may have drained the queue between the check and the add, then nobody else takes the request
+    if (closed) {
+      failQueued();
+    }
+    return request.result;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    dispatcher.interrupt();
+    failQueued();
+  }
+
+  private void failQueued() {
+    Request request;
+    while ((request = queue.poll()) != null) {
+      request.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+    }
+  }
+
+  private void dispatch() {
+    var batch = new ArrayList<Request>(maxBatchSize);
+    try {
+      while (!closed) {
+        batch.add(queue.take());
+        long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+          long wait = deadline - System.nanoTime();
+          var request = wait > 0 ? queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+          if (request == null)
+            break;
+          batch.add(request);
+        }
+        score(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      for (var request : batch) {
+        request.result.completeExceptionally(new IllegalStateException("Batcher is closed"));
+      }
+    } finally {
+      failQueued();
+    }
+  }
+
+  private void score(List<Request> batch) {
+    var model = models.get();
+    int columnCount = model.columnNames().size();
+    var dictionaries = new Dictionary[columnCount];
+    for (int column = 0; column < columnCount; column++) {
+      dictionaries[column] = model.dictionary(column);
+    }
+
+    // rows which fit the model, in batch order
+    var accepted = new ArrayList<Request>(batch.size());
+    var columns = new byte[columnCount][batch.size()];
+    for (var request : batch) {
+      try {
+        var codes = encode(dictionaries, request.values);
+        for (int column = 0; column < columnCount; column++) {
+          columns[column][accepted.size()] = (byte) codes[column];
+        }
+        accepted.add(request);
+      } catch (IllegalArgumentException e) {
+        request.result.completeExceptionally(e);
+      }
+    }
+    if (accepted.isEmpty()) {
+      return;
+    }
+
+    int size = accepted.size();
+    if (size < batch.size()) {
+      for (int column = 0; column < columnCount; column++) {
+        columns[column] = Arrays.copyOf(columns[column], size);
+      }
+    }
+    var data = Dataset.of(model.columnNames(), dictionaries, model.classDictionary(), columns, new byte[size]);
+    var classCodes = new int[size];
+    var probabilities = new double[size];
+    try {
+      model.predict(data, 0, size, classCodes, probabilities);
+    } catch (RuntimeException e) {
+      for (var request : accepted) {
+        request.result.completeExceptionally(e);
+      }
+      return;
+    }
+    for (int i = 0; i < size; i++) {
+      accepted.get(i).result.complete(
+        new Prediction(model.classDictionary().valueOf(classCodes[i]), probabilities[i])
+      );
+    }
+  }
+
+  /**
+   * @return codes of the values of a row, values absent in a dictionary get its unknown code
+   */
+  static int[] encode(Dictionary[] dictionaries, String[] values) {
+    if (values.length != dictionaries.length) {
+      throw new IllegalArgumentException("Expect " + dictionaries.length + " values, but get " + values.length);
+    }
+    var codes = new int[values.length];
+    for (int column = 0; column < values.length; column++) {
+      codes[column] = dictionaries[column].encode(values[column]);
+    }
+    return codes;
+  }
+
+  static class Prediction {
+    final String classValue;
+    final double probability;
+
+    Prediction(String classValue, double probability) {
+      this.classValue = classValue;
+      this.probability = probability;
+    }
+  }
+
+  private static class Request {
+    final String[] values;
+    final CompletableFuture<Prediction> result = new CompletableFuture<>();
+
+    Request(String[] values) {
+      this.values = values;
+    }
+  }
+}
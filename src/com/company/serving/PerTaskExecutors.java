@@ -0,0 +1,56 @@
+package com.company.serving;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors running every task in its own thread. Virtual threads are used when the runtime has them, the code
+ * is compiled for Java 17, so they are looked up reflectively and a cached pool of daemon platform threads is
+ * used otherwise.
+ */
+class PerTaskExecutors {
+  private static final boolean VIRTUAL = hasVirtualThreads();
+
+  private PerTaskExecutors() {
+  }
+
+  static ExecutorService newExecutor(String name) {
+    if (VIRTUAL) {
+      return newVirtualExecutor();
+    }
+    var counter = new AtomicInteger();
+    return Executors.newCachedThreadPool(task -> {
+      var thread = new Thread(task, name + "-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  static boolean isVirtual() {
+    return VIRTUAL;
+  }
+
+  private static boolean hasVirtualThreads() {
+    var executor = newVirtualExecutor();
+    if (executor == null) {
+      return false;
+    }
+    executor.shutdown();
+    return true;
+  }
+
+  /**
+   * @return executor of virtual threads, null if the runtime doesn't have them or they are a disabled preview
+   */
+  private static ExecutorService newVirtualExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException | InvocationTargetException e) {
+      return null;
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+package com.company.serving;
+
+import com.company.tree.CompiledTree;
+import com.company.tree.ModelHolder;
+import com.company.tree.TreeIO;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Embedded HTTP scoring service over a persisted tree, every request is handled by its own thread, virtual
+ * when the runtime has them. Rows of all requests are scored in micro-batches by a {@link MicroBatcher}.
+ * <pre>
+ *   POST /predict   body of rows, one per line, attribute values comma separated in the column order of the
+ *                   model; answers a line "class,probability" per row, 400 if a row has another count of
+ *                   values; missing (?) and unseen values are scored by the node they stop at
+ *   POST /reload    reads the model file again and swaps the model, in-flight batches finish on the old one
+ *   GET  /health    answers the version of the model
+ * </pre>
+ * Arguments of {@link #main} are {@code key=value} pairs, all optional:
+ * <pre>
+ *   model=resources/tree.bin   binary model, or a JSON one if the name ends with .json
+ *   port=8080                  port, 0 for any free one
+ *   window-micros=200          max wait of a row for others to batch with
+ *   max-batch=256              max rows of a batch
+ * </pre>
+ */
+public class ScoringServer implements Closeable {
+  private static final int BACKLOG = 1024;
+  private static final long NANOS_PER_MICRO = 1000;
+  // the JDK server doesn't disable Nagle's algorithm by default, so small responses wait for delayed ACKs
+  private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
+  static {
+    if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+      System.setProperty(NO_DELAY_PROPERTY, "true");
+    }
+  }
+
+  private final Path modelPath;
+  private final ModelHolder<CompiledTree> models;
+  private final MicroBatcher batcher;
+  private final ExecutorService executor;
+  private final HttpServer server;
+
+  private ScoringServer(Path modelPath, int port, long windowNanos, int maxBatchSize) throws IOException {
+    this.modelPath = modelPath;
+    this.models = new ModelHolder<>(load(modelPath));
+    this.batcher = new MicroBatcher(models, windowNanos, maxBatchSize);
+    this.executor = PerTaskExecutors.newExecutor("scoring");
+    this.server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+    server.setExecutor(executor);
+    server.createContext("/predict", exchange -> handle(exchange, "POST", this::predict));
+    server.createContext("/reload", exchange -> handle(exchange, "POST", this::reload));
+    server.createContext("/health", exchange -> handle(exchange, "GET", this::health));
+  }
+
+  public static void main(String[] args) throws IOException {
+    var options = parseOptions(args);
+    var server = start(
+      Path.of(options.getOrDefault("model", "resources/tree.bin")),
+      Integer.parseInt(options.getOrDefault("port", "8080")),
+      Long.parseLong(options.getOrDefault("window-micros", "200")) * NANOS_PER_MICRO,
+      Integer.parseInt(options.getOrDefault("max-batch", "256"))
+    );
+    System.out.println(
+      "Scoring on port " + server.port() + " with " +
+        (PerTaskExecutors.isVirtual() ? "virtual" : "platform") + " threads"
+    );
+  }
+
+  public static ScoringServer start(Path modelPath, int port, long windowNanos, int maxBatchSize)
+    throws IOException {
+    var scoringServer = new ScoringServer(modelPath, port, windowNanos, maxBatchSize);
+    scoringServer.server.start();
+    return scoringServer;
+  }
+
+  /**
+   * @return model of the file, binary unless the name ends with .json
+   */
+  public static CompiledTree load(Path path) throws IOException {
+    if (path.getFileName().toString().endsWith(".json")) {
+      return TreeIO.readJson(path).compile();
+    }
+    return TreeIO.readBinary(path);
+  }
+
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  public ModelHolder<CompiledTree> models() {
+    return models;
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    batcher.close();
+    executor.shutdown();
+  }
+
+  private String predict(String body) throws IOException {
+    var lines = body.lines().filter(line -> !line.isBlank()).toArray(String[]::new);
+    var results = new ArrayList<CompletableFuture<MicroBatcher.Prediction>>(lines.length);
+    for (var line : lines) {
+      results.add(batcher.submit(line.split(",", -1)));
+    }
+
+    var response = new StringBuilder();
+    for (var result : results) {
+      MicroBatcher.Prediction prediction;
+      try {
+        prediction = result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while scoring", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IllegalArgumentException) {
+          throw (IllegalArgumentException) e.getCause();
+        }
+        throw new IOException("Scoring failed", e.getCause());
+      }
+      response.append(prediction.classValue).append(',')
+        .append(String.format(Locale.ROOT, "%.6f", prediction.probability)).append('\n');
+    }
+    return response.toString();
+  }
+
+  private String reload(String body) throws IOException {
+    models.swap(load(modelPath));
+    return "version " + models.version() + "\n";
+  }
+
+  private String health(String body) {
+    return "ok, model version " + models.version() + "\n";
+  }
+
+  private static void handle(HttpExchange exchange, String method, Handler handler) throws IOException {
+    try (exchange) {
+      int status;
+      String response;
+      if (!exchange.getRequestMethod().equals(method)) {
+        status = 405;
+        response = "Expect " + method + ", but get " + exchange.getRequestMethod() + "\n";
+      } else {
+        try {
+          var body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+          response = handler.handle(body);
+          status = 200;
+        } catch (IllegalArgumentException e) {
+          status = 400;
+          response = e.getMessage() + "\n";
+        } catch (IOException | RuntimeException e) {
+          status = 500;
+          response = e + "\n";
+        }
+      }
+      var bytes = response.getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      exchange.getResponseBody().write(bytes);
+    }
+  }
+
+  static Map<String, String> parseOptions(String[] args) {
+    var options = new HashMap<String, String>();
+    for (var arg : args) {
+      int separatorIdx = arg.indexOf('=');
+      if (separatorIdx <= 0) {
+        throw new IllegalArgumentException("Expect key=value argument, but get '" + arg + "'");
+      }
+      options.put(arg.substring(0, separatorIdx), arg.substring(separatorIdx + 1));
+    }
+    return options;
+  }
+
+  private interface Handler {
+    String handle(String body) throws IOException;
+  }
+}
@@ -0,0 +1,165 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+import com.company.data.RowBitmap;
+import com.company.data.ValueIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Grows nodes over row bitmaps of a {@link ValueIndex} instead of scanning rows. The rows of a node are
+ * intersected once with the rows of every present class, the count of (value, class) of a column is then the
+ * cardinality of the intersection of those with the rows of the value, and the rows of a child are the rows
+ * of its parent intersected with the rows of its value. Splits are chosen from the same counts as by
+ * {@link TreeBuilder}, so the tree is the same.
+ */
+class BitmapTreeBuilder {
+  private final Dataset data;
+  private final ValueIndex index;
+  private final int classCount;
+  private final int baseClass;
+  private final double probabilityToBaseClass;
+  private final TreeConfig config;
+  private final TreeListener listener;
+  private final boolean instrumented;
+
+  BitmapTreeBuilder(Dataset data, ValueIndex index, double probabilityToBaseClass, TreeConfig config) {
+    if (index.size() != data.size() || index.columnCount() != data.columnCount()) {
+      throw new IllegalArgumentException(
+        "Expect index of " + data.size() + " rows and " + data.columnCount() + " columns, but get " +
+          index.size() + " rows and " + index.columnCount() + " columns"
+      );
+    }
+    this.data = data;
+    this.index = index;
+    this.classCount = data.classDictionary().size();
+    this.baseClass = Node.baseClass(data.classDictionary());
+    this.probabilityToBaseClass = probabilityToBaseClass;
+    this.config = config;
+    this.listener = config.listener();
+    this.instrumented = listener != TreeListener.NONE;
+  }
+
+  List<Node> build(int[] allowedColumnIndexes, RowBitmap rootRows, double[] rootClassCounts) {
+    var rootTask = new SubtreeTask(rootRows, rootClassCounts, allowedColumnIndexes, 0);
+    if (config.isParallel()) {
+      return config.pool().invoke(rootTask);
+    }
+    return rootTask.compute();
+  }
+
+  /**
+   * @param rows rows of the parent
+   * @param classCounts class counts of the parent's rows
+   * @param depth depth of the parent, the root is at 0
+   * @return grown children of the parent, empty for a leaf
+   */
+  private List<Node> createChildrenFromParent(
+    RowBitmap rows, double[] classCounts, int[] allowedColumnIndexes, int depth
+  ) {
+    int length = rows.cardinality();
+    if (TreeBuilder.isLeaf(config, classCounts, allowedColumnIndexes.length, depth)) {
+      if (instrumented) {
+        listener.onLeaf(depth, length);
+      }
+      return List.of();
+    }
+
+    long startNanos = instrumented ? System.nanoTime() : 0;
+    long startAllocatedBytes = instrumented ? ThreadAllocation.allocatedBytes() : 0;
+    var table = count(rows, classCounts, allowedColumnIndexes);
+    var children = Node.makeNodes(table, baseClass, probabilityToBaseClass, config.minGainRatio());
+    if (children.isEmpty()) {
+      if (instrumented) {
+        listener.onLeaf(depth, length);
+      }
+      return List.of();
+    }
+    long splitSearchEndNanos = instrumented ? System.nanoTime() : 0;
+    int columnIdx = children.get(0).columnIdx;
+    var childRows = new RowBitmap[children.size()];
+    for (int i = 0; i < children.size(); i++) {
+      childRows[i] = rows.and(index.rows(columnIdx, children.get(i).columnValue));
+    }
+    if (instrumented) {
+      long endNanos = System.nanoTime();
+      long allocatedBytes = ThreadAllocation.allocatedBytes();
+      listener.onSplit(
+        depth, length, allowedColumnIndexes.length, splitSearchEndNanos - startNanos, endNanos - splitSearchEndNanos,
+        allocatedBytes < 0 ? -1 : allocatedBytes - startAllocatedBytes
+      );
+    }
+    var allowedColumnIndexesWithoutTargetIndex = Arrays.stream(allowedColumnIndexes)
+      .filter(idx -> idx != columnIdx)
+      .toArray();
+
+    var tasks = new ArrayList<SubtreeTask>(children.size());
+    for (int i = 0; i < children.size(); i++) {
+      tasks.add(new SubtreeTask(
+        childRows[i], children.get(i).classCounts, allowedColumnIndexesWithoutTargetIndex, depth + 1
+      ));
+    }
+
+    var grownChildren = new ArrayList<Node>(children.size());
+    boolean parallel = config.isParallel() && length >= config.parallelRowsCutoff();
+    if (parallel) {
+      SubtreeTask.invokeAll(tasks);
+    }
+    for (int i = 0; i < children.size(); i++) {
+      var grandchildren = parallel ? tasks.get(i).join() : tasks.get(i).compute();
+      var child = children.get(i);
+      grownChildren.add(grandchildren.isEmpty() ? child : child.withChildren(grandchildren));
+    }
+    return List.copyOf(grownChildren);
+  }
+
+  /**
+   * @return contingency counts of the rows from intersection cardinalities
+   */
+  private ContingencyTable count(RowBitmap rows, double[] classCounts, int[] columns) {
+    var rowsOfClasses = new RowBitmap[classCount];
+    for (int classCode = 0; classCode < classCount; classCode++) {
+      rowsOfClasses[classCode] = classCounts[classCode] > 0. ? rows.and(index.classRows(classCode)) : null;
+    }
+
+    var counts = new double[columns.length][];
+    for (int slot = 0; slot < columns.length; slot++) {
+      int column = columns[slot];
+      int valuesSize = data.dictionary(column).size();
+      counts[slot] = new double[valuesSize * classCount];
+      for (int value = 0; value < valuesSize; value++) {
+        var valueRows = index.rows(column, value);
+        for (int classCode = 0; classCode < classCount; classCode++) {
+          if (rowsOfClasses[classCode] != null) {
+            counts[slot][value * classCount + classCode] = rowsOfClasses[classCode].andCardinality(valueRows);
+          }
+        }
+      }
+    }
+    return ContingencyTable.of(columns, classCount, counts);
+  }
+
+  private class SubtreeTask extends RecursiveTask<List<Node>> {
+    private static final long serialVersionUID = 1L;
+
+    private final RowBitmap rows;
+    private final double[] classCounts;
+    private final int[] allowedColumnIndexes;
+    private final int depth;
+
+    SubtreeTask(RowBitmap rows, double[] classCounts, int[] allowedColumnIndexes, int depth) {
+      this.rows = rows;
+      this.classCounts = classCounts;
+      this.allowedColumnIndexes = allowedColumnIndexes;
+      this.depth = depth;
+    }
+
+    @Override
+    protected List<Node> compute() {
+      return createChildrenFromParent(rows, classCounts, allowedColumnIndexes, depth);
+    }
+  }
+}
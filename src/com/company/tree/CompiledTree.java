@@ -0,0 +1,350 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+import com.company.data.Dictionary;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Trained tree flattened into primitive arrays for prediction.
+ * <p>
+ * Node 0 is the root. An inner node has a split column and a lookup of child nodes indexed by the value
+ * code of that column, a leaf has split column -1. The lookup has a slot for every code of the dictionary and
+ * one more for {@link Dictionary#unknownCode}. Values that the node didn't see in training, missing and unknown
+ * values point to a synthetic leaf with the node's own class distribution, so the walk takes no branch for
+ * them and never fails nor allocates.
+ * <p>
+ * Every node keeps its class counts, so the probability necessary to report the base class can be chosen
+ * at prediction time, the class of a node at the threshold the tree was made with is precomputed.
+ * <p>
+ * Scored datasets must be encoded with the dictionaries of the tree, codes of other dictionaries would pick
+ * wrong children. Datasets read on their own are re-encoded by {@link #encode}, scoring rejects a dataset
+ * whose column of a split has another dictionary. The check runs once per dataset, so the walk itself stays
+ * free of it.
+ */
+public class CompiledTree {
+  private static final int BATCH_CHUNK_SIZE = 1 << 14;
+
+  final List<String> columnNames;
+  final List<Dictionary> dictionaries;
+  final Dictionary classDictionary;
+  final int baseClass;
+  // dictionaries by column for the encoding check of every split
+  private final Dictionary[] columnDictionaries;
+  // distinct columns of splits, ascending
+  private final int[] splitColumnSet;
+  // last dataset found encoded with the dictionaries, a stale read by another thread only repeats the check
+  private Dataset checkedData;
+
+  final int[] splitColumns;
+  final int[] childOffsets;
+  final int[] children;
+  final int[] classCodes;
+  final double[] probabilities;
+  // classCounts[node * classDictionary.size() + classCode], weighted as the counts of nodes
+  final double[] classCounts;
+  final int[] otherClassCodes;
+  final double[] baseClassProbabilities;
+
+  /**
+   * Base class, its probabilities and the other classes are computed from the class counts.
+   */
+  CompiledTree(
+    List<String> columnNames,
+    List<Dictionary> dictionaries,
+    Dictionary classDictionary,
+    int[] splitColumns,
+    int[] childOffsets,
+    int[] children,
+    int[] classCodes,
+    double[] probabilities,
+    double[] classCounts
+  ) {
+    this.columnNames = columnNames;
+    this.dictionaries = dictionaries;
+    this.classDictionary = classDictionary;
+    this.splitColumns = splitColumns;
+    this.childOffsets = childOffsets;
+    this.children = children;
+    this.classCodes = classCodes;
+    this.probabilities = probabilities;
+    this.classCounts = classCounts;
+    this.columnDictionaries = dictionaries.toArray(new Dictionary[0]);
+    this.splitColumnSet = Arrays.stream(splitColumns).filter(column -> column >= 0).distinct().sorted().toArray();
+
+    int nodeCount = splitColumns.length;
+    int classCount = classDictionary.size();
+    this.baseClass = Node.baseClass(classDictionary);
+    this.otherClassCodes = new int[nodeCount];
+    this.baseClassProbabilities = new double[nodeCount];
+    var counts = new double[classCount];
+    for (int node = 0; node < nodeCount; node++) {
+      System.arraycopy(classCounts, node * classCount, counts, 0, classCount);
+      otherClassCodes[node] = Node.chooseClass(counts, baseClass, Double.POSITIVE_INFINITY);
+      baseClassProbabilities[node] = Node.classProbability(counts, baseClass);
+    }
+  }
+
+  static CompiledTree compile(
+    List<String> columnNames,
+    List<Dictionary> dictionaries,
+    Dictionary classDictionary,
+    List<Node> rootNodes,
+    double[] rootClassCounts,
+    double probabilityToBaseClass
+  ) {
+    int baseClass = Node.baseClass(classDictionary);
+    var splitColumns = new IntList();
+    var childOffsets = new IntList();
+    var children = new IntList();
+    // class counts of every node, other arrays are computed from them
+    var nodesClassCounts = new ArrayList<double[]>();
+
+    // node ids are given in BFS order, the root gets 0
+    var queue = new ArrayDeque<List<Node>>();
+    var queueIds = new IntList();
+    splitColumns.add(-1);
+    childOffsets.add(-1);
+    nodesClassCounts.add(rootClassCounts);
+    queue.add(rootNodes);
+    queueIds.add(0);
+
+    for (int head = 0; !queue.isEmpty(); head++) {
+      var nodeChildren = queue.poll();
+      int id = queueIds.get(head);
+      if (nodeChildren.isEmpty())
+        continue;
+
+      int columnIdx = nodeChildren.get(0).columnIdx;
+      // the last slot is the one of the unknown code
+      int valuesSize = dictionaries.get(columnIdx).unknownCode() + 1;
+      int offset = children.size();
+      splitColumns.set(id, columnIdx);
+      childOffsets.set(id, offset);
+      for (int value = 0; value < valuesSize; value++) {
+        children.add(-1);
+      }
+
+      for (var child : nodeChildren) {
+        int childId = splitColumns.size();
+        splitColumns.add(-1);
+        childOffsets.add(-1);
+        nodesClassCounts.add(child.classCounts);
+        children.set(offset + child.columnValue, childId);
+        queue.add(child.children);
+        queueIds.add(childId);
+      }
+
+      int fallbackId = -1;
+      for (int value = 0; value < valuesSize; value++) {
+        if (children.get(offset + value) != -1)
+          continue;
+        if (fallbackId == -1) {
+          fallbackId = splitColumns.size();
+          splitColumns.add(-1);
+          childOffsets.add(-1);
+          nodesClassCounts.add(nodesClassCounts.get(id));
+        }
+        children.set(offset + value, fallbackId);
+      }
+    }
+
+    int nodeCount = splitColumns.size();
+    int classCount = classDictionary.size();
+    var classCodes = new int[nodeCount];
+    var probabilities = new double[nodeCount];
+    var classCounts = new double[nodeCount * classCount];
+    for (int node = 0; node < nodeCount; node++) {
+      var counts = nodesClassCounts.get(node);
+      System.arraycopy(counts, 0, classCounts, node * classCount, classCount);
+      classCodes[node] = Node.chooseClass(counts, baseClass, probabilityToBaseClass);
+      probabilities[node] = Node.classProbability(counts, classCodes[node]);
+    }
+
+    return new CompiledTree(
+      columnNames, dictionaries, classDictionary,
+      splitColumns.toArray(), childOffsets.toArray(), children.toArray(), classCodes, probabilities, classCounts
+    );
+  }
+
+  /**
+   * @return the dataset coded with the dictionaries of the tree, values it didn't see get the unknown code
+   * @throws IllegalArgumentException if a class of the dataset is absent in the tree
+   */
+  public Dataset encode(Dataset data) {
+    return data.encodeWith(dictionaries, classDictionary);
+  }
+
+  /**
+   * @throws IllegalArgumentException if a column of a split isn't encoded with the dictionary of the tree
+   */
+  void checkEncoding(Dataset data) {
+    if (data == checkedData)
+      return;
+    if (data.columnCount() != columnDictionaries.length) {
+      int columnCount = data.columnCount();
+      throw new IllegalArgumentException("Expect " + columnDictionaries.length + " columns, but get " + columnCount);
+    }
+    for (int column : splitColumnSet) {
+      checkEncoding(data, column, columnDictionaries[column]);
+    }
+    checkedData = data;
+  }
+
+  static void checkEncoding(Dataset data, int column, Dictionary dictionary) {
+    if (data.dictionary(column) != dictionary) {
+      throw new IllegalArgumentException(
+        "Expect column " + column + " encoded with the dictionary of the model, but get another one, " +
+          "re-encode the dataset by encode of the model"
+      );
+    }
+  }
+
+  /**
+   * @return id of the leaf the row falls into
+   * @throws IllegalArgumentException if a column of a split isn't encoded with the dictionary of the tree
+   */
+  public int leaf(Dataset data, int row) {
+    checkEncoding(data);
+    return checkedLeaf(data, row);
+  }
+
+  /**
+   * {@link #leaf} of a dataset checked beforehand.
+   */
+  int checkedLeaf(Dataset data, int row) {
+    int node = 0;
+    int column;
+    while ((column = splitColumns[node]) >= 0) {
+      node = children[childOffsets[node] + data.value(column, row)];
+    }
+    return node;
+  }
+
+  public int predictClass(Dataset data, int row) {
+    return classCodes[leaf(data, row)];
+  }
+
+  /**
+   * Predicts rows [from, to) of the dataset into the same positions of the result arrays.
+   */
+  public void predict(Dataset data, int from, int to, int[] classCodes, double[] probabilities) {
+    checkEncoding(data);
+    for (int row = from; row < to; row++) {
+      int leaf = checkedLeaf(data, row);
+      classCodes[row] = this.classCodes[leaf];
+      probabilities[row] = this.probabilities[leaf];
+    }
+  }
+
+  /**
+   * Predicts the whole dataset. Datasets bigger than one chunk are split into chunks scored in parallel.
+   */
+  public Predictions predict(Dataset data) {
+    checkEncoding(data);
+    int size = data.size();
+    var resultClassCodes = new int[size];
+    var resultProbabilities = new double[size];
+    if (size <= BATCH_CHUNK_SIZE) {
+      predict(data, 0, size, resultClassCodes, resultProbabilities);
+    } else {
+      int chunks = (size + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE;
+      IntStream.range(0, chunks).parallel().forEach(chunk -> predict(
+        data, chunk * BATCH_CHUNK_SIZE, Math.min(size, (chunk + 1) * BATCH_CHUNK_SIZE),
+        resultClassCodes, resultProbabilities
+      ));
+    }
+    return new Predictions(resultClassCodes, resultProbabilities);
+  }
+
+  /**
+   * @param probabilityToBaseClass probability of the base class necessary to report it
+   */
+  public int predictClass(Dataset data, int row, double probabilityToBaseClass) {
+    return classCode(leaf(data, row), probabilityToBaseClass);
+  }
+
+  /**
+   * @return probability of the base class for every row of the dataset, which is the score thresholds
+   * of {@link #predictClass(Dataset, int, double)} are applied to
+   */
+  public double[] baseClassProbabilities(Dataset data) {
+    checkEncoding(data);
+    var result = new double[data.size()];
+    for (int row = 0; row < result.length; row++) {
+      result[row] = baseClassProbabilities[checkedLeaf(data, row)];
+    }
+    return result;
+  }
+
+  public int classCode(int node) {
+    return classCodes[node];
+  }
+
+  public double probability(int node) {
+    return probabilities[node];
+  }
+
+  public int classCode(int node, double probabilityToBaseClass) {
+    double baseClassProbability = baseClassProbabilities[node];
+    return baseClassProbability > 0. && baseClassProbability >= probabilityToBaseClass
+      ? baseClass
+      : otherClassCodes[node];
+  }
+
+  public double classCount(int node, int classCode) {
+    return classCounts[node * classDictionary.size() + classCode];
+  }
+
+  /**
+   * @return class with MIN string-value
+   */
+  public int baseClass() {
+    return baseClass;
+  }
+
+  public int nodeCount() {
+    return splitColumns.length;
+  }
+
+  public List<String> columnNames() {
+    return columnNames;
+  }
+
+  public Dictionary dictionary(int column) {
+    return dictionaries.get(column);
+  }
+
+  public Dictionary classDictionary() {
+    return classDictionary;
+  }
+
+  private static class IntList {
+    private int[] values = new int[16];
+    private int size;
+
+    void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+
+    int get(int idx) {
+      return values[idx];
+    }
+
+    void set(int idx, int value) {
+      values[idx] = value;
+    }
+
+    int size() {
+      return size;
+    }
+
+    int[] toArray() {
+      return Arrays.copyOf(values, size);
+    }
+  }
+}
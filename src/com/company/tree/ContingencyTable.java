@@ -0,0 +1,145 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Counts of (attribute value × class) for several columns over the same rows, collected in one scan. Counts
+ * are weights, whole for rows counted once and fractional for parts of rows with missing values, see
+ * {@link TreeBuilder}. Whole counts are collected into doubles directly, which are exact up to 2^53 rows.
+ */
+class ContingencyTable {
+  final int[] columns;
+  final int classCount;
+  final double size;
+  final double[] classCounts;
+  // counts[slot][value * classCount + classCode], slot is an index in columns
+  final double[][] counts;
+  final double[][] valueCounts;
+  // code of the missing value of every slot, -1 if the column has none or missing values are counted as a value
+  final int[] missingCodes;
+
+  private ContingencyTable(
+    int[] columns, int classCount, double size, double[] classCounts, double[][] counts, double[][] valueCounts,
+    int[] missingCodes
+  ) {
+    this.columns = columns;
+    this.classCount = classCount;
+    this.size = size;
+    this.classCounts = classCounts;
+    this.counts = counts;
+    this.valueCounts = valueCounts;
+    this.missingCodes = missingCodes;
+  }
+
+  /**
+   * @param parallel count every column in its own task instead of one scan over all columns
+   */
+  static ContingencyTable count(Dataset data, int[] columns, IntBuffer rows, int offset, int length, boolean parallel) {
+    int classCount = data.classDictionary().size();
+    var counts = new double[columns.length][];
+    for (int slot = 0; slot < columns.length; slot++) {
+      counts[slot] = new double[data.dictionary(columns[slot]).size() * classCount];
+    }
+
+    if (parallel) {
+      IntStream.range(0, columns.length).parallel().forEach(slot -> {
+        int column = columns[slot];
+        var slotCounts = counts[slot];
+        for (int i = offset; i < offset + length; i++) {
+          int row = rows.get(i);
+          slotCounts[data.value(column, row) * classCount + data.classCode(row)]++;
+        }
+      });
+    } else {
+      for (int i = offset; i < offset + length; i++) {
+        int row = rows.get(i);
+        int classCode = data.classCode(row);
+        for (int slot = 0; slot < columns.length; slot++) {
+          counts[slot][data.value(columns[slot], row) * classCount + classCode]++;
+        }
+      }
+    }
+
+    return of(columns, classCount, counts, missingCodes(data, columns));
+  }
+
+  /**
+   * Counts rows [offset, offset + length) of the buffer, the row at position i has weight weights[i].
+   */
+  static ContingencyTable count(
+    Dataset data, int[] columns, IntBuffer rows, double[] weights, int offset, int length
+  ) {
+    int classCount = data.classDictionary().size();
+    var counts = new double[columns.length][];
+    for (int slot = 0; slot < columns.length; slot++) {
+      counts[slot] = new double[data.dictionary(columns[slot]).size() * classCount];
+    }
+    for (int i = offset; i < offset + length; i++) {
+      int row = rows.get(i);
+      int classCode = data.classCode(row);
+      for (int slot = 0; slot < columns.length; slot++) {
+        counts[slot][data.value(columns[slot], row) * classCount + classCode] += weights[i];
+      }
+    }
+    return of(columns, classCount, counts, missingCodes(data, columns));
+  }
+
+  /**
+   * Table of counts collected elsewhere, class and value counts are summed from them. Missing values are
+   * counted as a value of their own.
+   *
+   * @param counts counts[slot][value * classCount + classCode]
+   */
+  static ContingencyTable of(int[] columns, int classCount, double[][] counts) {
+    var missingCodes = new int[columns.length];
+    Arrays.fill(missingCodes, -1);
+    return of(columns, classCount, counts, missingCodes);
+  }
+
+  /**
+   * @param missingCodes code of the missing value of every slot, -1 to count missing values as a value
+   */
+  static ContingencyTable of(int[] columns, int classCount, double[][] counts, int[] missingCodes) {
+    var classCounts = new double[classCount];
+    var valueCounts = new double[columns.length][];
+    for (int slot = 0; slot < columns.length; slot++) {
+      var slotCounts = counts[slot];
+      valueCounts[slot] = new double[slotCounts.length / classCount];
+      for (int i = 0; i < slotCounts.length; i++) {
+        valueCounts[slot][i / classCount] += slotCounts[i];
+        if (slot == 0) {
+          classCounts[i % classCount] += slotCounts[i];
+        }
+      }
+    }
+    double size = 0.;
+    for (double count : classCounts) {
+      size += count;
+    }
+    return new ContingencyTable(columns, classCount, size, classCounts, counts, valueCounts, missingCodes);
+  }
+
+  private static int[] missingCodes(Dataset data, int[] columns) {
+    var missingCodes = new int[columns.length];
+    for (int slot = 0; slot < columns.length; slot++) {
+      missingCodes[slot] = data.dictionary(columns[slot]).missingCode();
+    }
+    return missingCodes;
+  }
+
+  double count(int slot, int value, int classCode) {
+    return counts[slot][value * classCount + classCode];
+  }
+
+  double valueCount(int slot, int value) {
+    return valueCounts[slot][value];
+  }
+
+  int valuesSize(int slot) {
+    return valueCounts[slot].length;
+  }
+}
@@ -0,0 +1,244 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+import com.company.data.Sampling;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * K-fold cross-validation of trees over one dataset and a search of column subsets by it.
+ * <p>
+ * Rows are dealt once by the seed into folds stratified by class, kept as a permutation grouped by fold, which
+ * all evaluations share with the dataset itself: fold f is tested on its slice of the permutation in place, and
+ * only the training rows of a tree are copied into its own index array, as growing reorders them. Folds of all
+ * candidates are evaluated in parallel in the pool of the config, every tree itself is grown with the config.
+ * Scores depend only on the seed, not on scheduling.
+ */
+public class CrossValidation {
+  private final Dataset data;
+  private final int folds;
+  // rows of fold f are permutation[foldOffsets[f], foldOffsets[f + 1])
+  private final int[] permutation;
+  private final int[] foldOffsets;
+
+  private CrossValidation(Dataset data, int folds, int[] permutation, int[] foldOffsets) {
+    this.data = data;
+    this.folds = folds;
+    this.permutation = permutation;
+    this.foldOffsets = foldOffsets;
+  }
+
+  /**
+   * Folds are stratified by class, see {@link Sampling#stratifiedFolds}.
+   */
+  public static CrossValidation of(Dataset data, int folds, long seed) {
+    if (folds < 2 || folds > data.size()) {
+      throw new IllegalArgumentException("Folds must be in [2, " + data.size() + "], but get " + folds);
+    }
+    var foldOfRows = Sampling.stratifiedFolds(data, folds, new SplittableRandom(seed));
+    var foldOffsets = new int[folds + 1];
+    for (int fold : foldOfRows) {
+      foldOffsets[fold + 1]++;
+    }
+    for (int fold = 0; fold < folds; fold++) {
+      foldOffsets[fold + 1] += foldOffsets[fold];
+    }
+    var permutation = new int[data.size()];
+    var positions = Arrays.copyOf(foldOffsets, folds);
+    for (int row = 0; row < foldOfRows.length; row++) {
+      permutation[positions[foldOfRows[row]]++] = row;
+    }
+    return new CrossValidation(data, folds, permutation, foldOffsets);
+  }
+
+  public Score evaluate(int[] columns, double probabilityToBaseClass, TreeConfig config) {
+    return search(List.of(columns), probabilityToBaseClass, config).get(0);
+  }
+
+  /**
+   * @param candidates column subsets to score
+   * @return scores of the candidates from the best mean accuracy to the worst
+   */
+  public List<Score> search(List<int[]> candidates, double probabilityToBaseClass, TreeConfig config) {
+    var sortedCandidates = new ArrayList<int[]>(candidates.size());
+    for (var candidate : candidates) {
+      if (candidate.length == 0) {
+        throw new IllegalArgumentException("Candidate columns must not be empty");
+      }
+      for (int column : candidate) {
+        if (column < 0 || column >= data.columnCount()) {
+          throw new IllegalArgumentException(
+            "Expect columns in [0, " + data.columnCount() + "), but get " + Arrays.toString(candidate)
+          );
+        }
+      }
+      var sorted = candidate.clone();
+      Arrays.sort(sorted);
+      sortedCandidates.add(sorted);
+    }
+
+    var accuracies = new double[sortedCandidates.size()][folds];
+    config.pool().submit(() -> IntStream.range(0, sortedCandidates.size() * folds).parallel().forEach(task -> {
+      int candidate = task / folds;
+      int fold = task % folds;
+      accuracies[candidate][fold] = foldAccuracy(sortedCandidates.get(candidate), fold, probabilityToBaseClass, config);
+    })).join();
+
+    var scores = new ArrayList<Score>(sortedCandidates.size());
+    for (int candidate = 0; candidate < sortedCandidates.size(); candidate++) {
+      scores.add(new Score(sortedCandidates.get(candidate), accuracies[candidate]));
+    }
+    scores.sort(Comparator.comparingDouble(Score::meanAccuracy).reversed());
+    return scores;
+  }
+
+  /**
+   * @return all subsets of the given size of columns [0, columnCount) in lexicographic order
+   */
+  public static List<int[]> combinations(int columnCount, int size) {
+    if (size < 1 || size > columnCount) {
+      throw new IllegalArgumentException("Subset size must be in [1, " + columnCount + "], but get " + size);
+    }
+    var result = new ArrayList<int[]>();
+    var subset = IntStream.range(0, size).toArray();
+    while (true) {
+      result.add(subset.clone());
+      int i = size - 1;
+      while (i >= 0 && subset[i] == columnCount - size + i) {
+        i--;
+      }
+      if (i < 0) {
+        return result;
+      }
+      subset[i]++;
+      for (int j = i + 1; j < size; j++) {
+        subset[j] = subset[j - 1] + 1;
+      }
+    }
+  }
+
+  /**
+   * @return count distinct random subsets of the given size of columns [0, columnCount), fewer if there are
+   * not as many subsets
+   */
+  public static List<int[]> randomSubsets(int columnCount, int size, int count, long seed) {
+    if (size < 1 || size > columnCount) {
+      throw new IllegalArgumentException("Subset size must be in [1, " + columnCount + "], but get " + size);
+    }
+    var random = new SplittableRandom(seed);
+    var seen = new HashSet<List<Integer>>();
+    var result = new ArrayList<int[]>();
+    var columns = IntStream.range(0, columnCount).toArray();
+    // the attempts limit stops the loop when the subsets are exhausted
+    for (long attempt = 0; result.size() < count && attempt < 16L * count; attempt++) {
+      for (int i = 0; i < size; i++) {
+        int j = i + random.nextInt(columnCount - i);
+        int tmp = columns[i];
+        columns[i] = columns[j];
+        columns[j] = tmp;
+      }
+      var subset = Arrays.copyOf(columns, size);
+      Arrays.sort(subset);
+      if (seen.add(Arrays.stream(subset).boxed().collect(Collectors.toList()))) {
+        result.add(subset);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Ranked report of scores, one line per candidate with its columns named.
+   */
+  public String toText(List<Score> scores) {
+    var text = new StringBuilder();
+    text.append(format("%d-fold cross-validation over %d rows%n", folds, data.size()));
+    text.append(format("%4s %10s %10s %10s  %s%n", "rank", "mean", "std", "min", "columns"));
+    for (int rank = 0; rank < scores.size(); rank++) {
+      var score = scores.get(rank);
+      var names = Arrays.stream(score.columns)
+        .mapToObj(column -> data.columnNames().get(column))
+        .collect(Collectors.joining(", "));
+      text.append(format(
+        "%4d %10.6f %10.6f %10.6f  %s%n",
+        rank + 1, score.meanAccuracy(), score.accuracyStd(), score.minAccuracy(), names
+      ));
+    }
+    return text.toString();
+  }
+
+  public void writeReport(List<Score> scores, Path path) throws IOException {
+    Files.writeString(path, toText(scores), StandardCharsets.UTF_8);
+  }
+
+  public int folds() {
+    return folds;
+  }
+
+  private double foldAccuracy(int[] columns, int fold, double probabilityToBaseClass, TreeConfig config) {
+    int testFrom = foldOffsets[fold];
+    int testTo = foldOffsets[fold + 1];
+    var trainRows = new int[permutation.length - (testTo - testFrom)];
+    System.arraycopy(permutation, 0, trainRows, 0, testFrom);
+    System.arraycopy(permutation, testTo, trainRows, testFrom, permutation.length - testTo);
+
+    var tree = Tree.makeTree(data, trainRows, columns, probabilityToBaseClass, config).compile();
+    int correct = 0;
+    for (int i = testFrom; i < testTo; i++) {
+      int row = permutation[i];
+      if (tree.predictClass(data, row) == data.classCode(row))
+        correct++;
+    }
+    return (double) correct / (testTo - testFrom);
+  }
+
+  private static String format(String format, Object... args) {
+    return String.format(Locale.ROOT, format, args);
+  }
+
+  /**
+   * Accuracies of one column subset on every fold.
+   */
+  public static class Score {
+    private final int[] columns;
+    private final double[] foldAccuracies;
+
+    Score(int[] columns, double[] foldAccuracies) {
+      this.columns = columns;
+      this.foldAccuracies = foldAccuracies;
+    }
+
+    public int[] columns() {
+      return columns.clone();
+    }
+
+    public double[] foldAccuracies() {
+      return foldAccuracies.clone();
+    }
+
+    public double meanAccuracy() {
+      return Arrays.stream(foldAccuracies).average().orElse(0.);
+    }
+
+    /**
+     * @return sample standard deviation of fold accuracies
+     */
+    public double accuracyStd() {
+      double mean = meanAccuracy();
+      double sum = 0.;
+      for (double accuracy : foldAccuracies) {
+        sum += (accuracy - mean) * (accuracy - mean);
+      }
+      return Math.sqrt(sum / (foldAccuracies.length - 1));
+    }
+
+    public double minAccuracy() {
+      return Arrays.stream(foldAccuracies).min().orElse(0.);
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.company.tree;
+
+/**
+ * Entropy kernel over counts. Everything is expressed through n·log2(n), which is tabulated for small whole
+ * counts and computed with {@link Math#log} otherwise, e.g. for fractional weights.
+ */
+class Entropy {
+  private static final int TABLE_SIZE = 1 << 16;
+  private static final double INV_LN_2 = 1. / Math.log(2.);
+  private static final double[] N_LOG2_N = new double[TABLE_SIZE];
+
+  static {
+    for (int n = 1; n < TABLE_SIZE; n++) {
+      N_LOG2_N[n] = n * Math.log(n) * INV_LN_2;
+    }
+  }
+
+  private Entropy() {
+  }
+
+  static double log2(double x) {
+    return Math.log(x) * INV_LN_2;
+  }
+
+  /**
+   * @return n·log2(n), 0 for n = 0
+   */
+  static double nLog2n(int n) {
+    if (n < TABLE_SIZE) {
+      return N_LOG2_N[n];
+    }
+    return n * Math.log(n) * INV_LN_2;
+  }
+
+  /**
+   * @return entropy of the distribution multiplied by its total count
+   */
+  static double scaledInfo(int[] counts, int from, int length, int total) {
+    double result = nLog2n(total);
+    for (int i = from; i < from + length; i++) {
+      result -= nLog2n(counts[i]);
+    }
+    return result;
+  }
+
+  /**
+   * @return n·log2(n), 0 for n = 0
+   */
+  static double nLog2n(double n) {
+    int whole = (int) n;
+    if (whole == n) {
+      return nLog2n(whole);
+    }
+    return n * Math.log(n) * INV_LN_2;
+  }
+
+  /**
+   * @return entropy of the distribution multiplied by its total count
+   */
+  static double scaledInfo(double[] counts, int from, int length, double total) {
+    double result = nLog2n(total);
+    for (int i = from; i < from + length; i++) {
+      result -= nLog2n(counts[i]);
+    }
+    return result;
+  }
+}
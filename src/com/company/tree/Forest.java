@@ -0,0 +1,388 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+import com.company.data.Dictionary;
+import com.company.data.Sampling;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Bagged ensemble of trees. Every tree grows over its own bootstrap sample of rows and its own random subset
+ * of columns, trees are grown in parallel. Probabilities of classes are averaged over the trees.
+ * <p>
+ * For prediction all trees are concatenated into one set of flat arrays like {@link CompiledTree} ones,
+ * tree i starts at node {@code roots[i]}, and every node keeps probabilities of all classes.
+ * <p>
+ * Rows left out of the bootstrap sample of a tree are scored by it to estimate out-of-bag accuracy, so the
+ * forest needs no separate holdout.
+ * <p>
+ * The listener of the config receives growing events of every tree and prediction events of the forest.
+ * Scored datasets must be encoded with the dictionaries of the training dataset, as for {@link CompiledTree},
+ * the columns of splits are checked once per dataset.
+ */
+public class Forest {
+  private static final int BATCH_CHUNK_SIZE = 1 << 14;
+
+  private final List<Tree> trees;
+  private final Dictionary classDictionary;
+  // dictionaries of the columns of the training dataset, scored datasets must be encoded with them
+  private final Dictionary[] dictionaries;
+  // distinct columns of splits of all trees, ascending
+  private final int[] splitColumnSet;
+  // last dataset found encoded with the dictionaries, a stale read by another thread only repeats the check
+  private Dataset checkedData;
+  // sums of class probabilities of a row scored by predictClass, one array per scoring thread
+  private final ThreadLocal<double[]> rowSums;
+  private final int classCount;
+  private final int baseClass;
+  private final double probabilityToBaseClass;
+  private final double outOfBagAccuracy;
+  private final TreeListener listener;
+
+  private final int[] roots;
+  private final int[] splitColumns;
+  private final int[] childOffsets;
+  private final int[] children;
+  // classProbabilities[node * classCount + classCode]
+  private final double[] classProbabilities;
+
+  private Forest(
+    List<Tree> trees,
+    Dictionary classDictionary,
+    double probabilityToBaseClass,
+    long[][] inBagRows,
+    Dataset data,
+    TreeListener listener
+  ) {
+    this.trees = List.copyOf(trees);
+    this.listener = listener;
+    this.classDictionary = classDictionary;
+    this.dictionaries = new Dictionary[data.columnCount()];
+    for (int column = 0; column < dictionaries.length; column++) {
+      dictionaries[column] = data.dictionary(column);
+    }
+    this.classCount = classDictionary.size();
+    this.rowSums = ThreadLocal.withInitial(() -> new double[classCount]);
+    this.baseClass = Node.baseClass(classDictionary);
+    this.probabilityToBaseClass = probabilityToBaseClass;
+
+    int nodeCount = 0;
+    int childrenSize = 0;
+    for (var tree : trees) {
+      nodeCount += tree.compile().nodeCount();
+      childrenSize += tree.compile().children.length;
+    }
+    roots = new int[trees.size()];
+    splitColumns = new int[nodeCount];
+    childOffsets = new int[nodeCount];
+    children = new int[childrenSize];
+    classProbabilities = new double[nodeCount * classCount];
+
+    int nodeBase = 0;
+    int childrenBase = 0;
+    for (int i = 0; i < trees.size(); i++) {
+      var compiled = trees.get(i).compile();
+      roots[i] = nodeBase;
+      for (int node = 0; node < compiled.nodeCount(); node++) {
+        splitColumns[nodeBase + node] = compiled.splitColumns[node];
+        int childOffset = compiled.childOffsets[node];
+        childOffsets[nodeBase + node] = childOffset >= 0 ? childrenBase + childOffset : -1;
+
+        double total = 0.;
+        for (int classCode = 0; classCode < classCount; classCode++) {
+          total += compiled.classCount(node, classCode);
+        }
+        for (int classCode = 0; classCode < classCount; classCode++) {
+          classProbabilities[(nodeBase + node) * classCount + classCode] =
+            total == 0. ? 0. : compiled.classCount(node, classCode) / total;
+        }
+      }
+      for (int child = 0; child < compiled.children.length; child++) {
+        children[childrenBase + child] = nodeBase + compiled.children[child];
+      }
+      nodeBase += compiled.nodeCount();
+      childrenBase += compiled.children.length;
+    }
+
+    this.splitColumnSet = Arrays.stream(splitColumns).filter(column -> column >= 0).distinct().sorted().toArray();
+    this.outOfBagAccuracy = outOfBagAccuracy(data, inBagRows);
+  }
+
+  public static Forest makeForest(
+    Dataset data, int treesCount, int columnsPerTree, double probabilityToBaseClass, long seed
+  ) {
+    return makeForest(data, treesCount, columnsPerTree, probabilityToBaseClass, seed, TreeConfig.defaults());
+  }
+
+  /**
+   * Trees are grown in parallel in the pool of the config, every tree itself is grown with the config.
+   * The result depends only on the seed, not on scheduling.
+   *
+   * @param columnsPerTree count of random columns every tree may split on
+   */
+  public static Forest makeForest(
+    Dataset data, int treesCount, int columnsPerTree, double probabilityToBaseClass, long seed, TreeConfig config
+  ) {
+    if (treesCount < 1) {
+      throw new IllegalArgumentException("Count of trees must be positive, but get " + treesCount);
+    }
+    if (columnsPerTree < 1 || columnsPerTree > data.columnCount()) {
+      throw new IllegalArgumentException(
+        "Columns per tree must be in [1, " + data.columnCount() + "], but get " + columnsPerTree
+      );
+    }
+    if (data.size() == 0) {
+      throw new IllegalArgumentException("Can't grow a forest over an empty dataset");
+    }
+
+    var random = new SplittableRandom(seed);
+    var treeRandoms = new SplittableRandom[treesCount];
+    for (int i = 0; i < treesCount; i++) {
+      treeRandoms[i] = random.split();
+    }
+
+    var inBagRows = new long[treesCount][];
+    var trees = config.pool().submit(() -> IntStream.range(0, treesCount).parallel()
+      .mapToObj(i -> {
+        var treeRandom = treeRandoms[i];
+        var rows = Sampling.bootstrap(data.size(), treeRandom);
+        var inBag = new long[(data.size() + 63) >>> 6];
+        for (int row : rows) {
+          inBag[row >>> 6] |= 1L << row;
+        }
+        inBagRows[i] = inBag;
+        var columns = randomColumns(data.columnCount(), columnsPerTree, treeRandom);
+        return Tree.makeTree(data, rows, columns, probabilityToBaseClass, config);
+      })
+      .toArray(Tree[]::new)
+    ).join();
+
+    return new Forest(
+      List.of(trees), data.classDictionary(), probabilityToBaseClass, inBagRows, data, config.listener()
+    );
+  }
+
+  /**
+   * @return sorted random subset of columns, picked by a partial Fisher-Yates shuffle
+   */
+  private static int[] randomColumns(int columnCount, int count, SplittableRandom random) {
+    var columns = IntStream.range(0, columnCount).toArray();
+    for (int i = 0; i < count; i++) {
+      int j = i + random.nextInt(columnCount - i);
+      int tmp = columns[i];
+      columns[i] = columns[j];
+      columns[j] = tmp;
+    }
+    var result = Arrays.copyOf(columns, count);
+    Arrays.sort(result);
+    return result;
+  }
+
+  private double outOfBagAccuracy(Dataset data, long[][] inBagRows) {
+    int size = data.size();
+    int chunks = (size + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE;
+    // [chunk] -> {scored rows, right predictions}
+    var counts = new long[chunks][2];
+    IntStream.range(0, chunks).parallel().forEach(chunk -> {
+      var sums = new double[classCount];
+      for (int row = chunk * BATCH_CHUNK_SIZE; row < Math.min(size, (chunk + 1) * BATCH_CHUNK_SIZE); row++) {
+        Arrays.fill(sums, 0.);
+        int votingTrees = 0;
+        for (int i = 0; i < roots.length; i++) {
+          if ((inBagRows[i][row >>> 6] & (1L << row)) != 0)
+            continue;
+          addProbabilities(leaf(roots[i], data, row), sums);
+          votingTrees++;
+        }
+        if (votingTrees == 0)
+          continue;
+        counts[chunk][0]++;
+        if (chooseClass(sums, votingTrees, probabilityToBaseClass) == data.classCode(row)) {
+          counts[chunk][1]++;
+        }
+      }
+    });
+
+    long scored = 0;
+    long right = 0;
+    for (var chunkCounts : counts) {
+      scored += chunkCounts[0];
+      right += chunkCounts[1];
+    }
+    return scored == 0 ? Double.NaN : (double) right / scored;
+  }
+
+  private int leaf(int root, Dataset data, int row) {
+    int node = root;
+    int column;
+    while ((column = splitColumns[node]) >= 0) {
+      node = children[childOffsets[node] + data.value(column, row)];
+    }
+    return node;
+  }
+
+  /**
+   * Every scoring method checks the dataset, once per dataset, leaves are then found without checks.
+   */
+  private void checkEncoding(Dataset data) {
+    if (data == checkedData)
+      return;
+    if (data.columnCount() != dictionaries.length) {
+      throw new IllegalArgumentException("Expect " + dictionaries.length + " columns, but get " + data.columnCount());
+    }
+    for (int column : splitColumnSet) {
+      CompiledTree.checkEncoding(data, column, dictionaries[column]);
+    }
+    checkedData = data;
+  }
+
+  private void addProbabilities(int leaf, double[] sums) {
+    int offset = leaf * classCount;
+    for (int classCode = 0; classCode < classCount; classCode++) {
+      sums[classCode] += classProbabilities[offset + classCode];
+    }
+  }
+
+  /**
+   * The same rule as for a single tree over averaged probabilities: base class if its probability reaches
+   * the threshold, otherwise the most probable of other classes.
+   */
+  private int chooseClass(double[] sums, int votingTrees, double probabilityToBaseClass) {
+    double baseClassProbability = sums[baseClass] / votingTrees;
+    if (baseClassProbability > 0. && baseClassProbability >= probabilityToBaseClass) {
+      return baseClass;
+    }
+    int otherClass = -1;
+    for (int classCode = 0; classCode < classCount; classCode++) {
+      if (classCode == baseClass || sums[classCode] == 0.)
+        continue;
+      if (otherClass == -1 || sums[otherClass] < sums[classCode])
+        otherClass = classCode;
+    }
+    return otherClass != -1 ? otherClass : baseClass;
+  }
+
+  /**
+   * @see CompiledTree#encode
+   */
+  public Dataset encode(Dataset data) {
+    return data.encodeWith(Arrays.asList(dictionaries), classDictionary);
+  }
+
+  /**
+   * Averages probabilities of classes over all trees into the result array of the class count size.
+   */
+  public void classProbabilities(Dataset data, int row, double[] result) {
+    checkEncoding(data);
+    Arrays.fill(result, 0.);
+    for (int root : roots) {
+      addProbabilities(leaf(root, data, row), result);
+    }
+    for (int classCode = 0; classCode < classCount; classCode++) {
+      result[classCode] /= roots.length;
+    }
+  }
+
+  public int predictClass(Dataset data, int row) {
+    return predictClass(data, row, probabilityToBaseClass);
+  }
+
+  /**
+   * @param probabilityToBaseClass averaged probability of the base class necessary to report it
+   */
+  public int predictClass(Dataset data, int row, double probabilityToBaseClass) {
+    checkEncoding(data);
+    long startNanos = listener != TreeListener.NONE ? System.nanoTime() : 0;
+    var sums = rowSums.get();
+    Arrays.fill(sums, 0.);
+    for (int root : roots) {
+      addProbabilities(leaf(root, data, row), sums);
+    }
+    int classCode = chooseClass(sums, roots.length, probabilityToBaseClass);
+    if (listener != TreeListener.NONE) {
+      listener.onPredict(1, System.nanoTime() - startNanos);
+    }
+    return classCode;
+  }
+
+  /**
+   * Predicts rows [from, to) of the dataset into the same positions of the result arrays.
+   */
+  public void predict(Dataset data, int from, int to, int[] classCodes, double[] probabilities) {
+    checkEncoding(data);
+    var sums = new double[classCount];
+    for (int row = from; row < to; row++) {
+      Arrays.fill(sums, 0.);
+      for (int root : roots) {
+        addProbabilities(leaf(root, data, row), sums);
+      }
+      int classCode = chooseClass(sums, roots.length, probabilityToBaseClass);
+      classCodes[row] = classCode;
+      probabilities[row] = sums[classCode] / roots.length;
+    }
+  }
+
+  /**
+   * Predicts the whole dataset. Datasets bigger than one chunk are split into chunks scored in parallel.
+   */
+  public Predictions predict(Dataset data) {
+    checkEncoding(data);
+    long startNanos = listener != TreeListener.NONE ? System.nanoTime() : 0;
+    int size = data.size();
+    var resultClassCodes = new int[size];
+    var resultProbabilities = new double[size];
+    int chunks = (size + BATCH_CHUNK_SIZE - 1) / BATCH_CHUNK_SIZE;
+    IntStream.range(0, chunks).parallel().forEach(chunk -> predict(
+      data, chunk * BATCH_CHUNK_SIZE, Math.min(size, (chunk + 1) * BATCH_CHUNK_SIZE),
+      resultClassCodes, resultProbabilities
+    ));
+    if (listener != TreeListener.NONE) {
+      listener.onPredict(size, System.nanoTime() - startNanos);
+    }
+    return new Predictions(resultClassCodes, resultProbabilities);
+  }
+
+  /**
+   * @return averaged probability of the base class for every row of the dataset
+   */
+  public double[] baseClassProbabilities(Dataset data) {
+    checkEncoding(data);
+    var result = new double[data.size()];
+    IntStream.range(0, data.size()).parallel().forEach(row -> {
+      double sum = 0.;
+      for (int root : roots) {
+        sum += classProbabilities[leaf(root, data, row) * classCount + baseClass];
+      }
+      result[row] = sum / roots.length;
+    });
+    return result;
+  }
+
+  /**
+   * @return accuracy of predictions of rows by trees which didn't see them in training, NaN if every row
+   * was in every sample
+   */
+  public double outOfBagAccuracy() {
+    return outOfBagAccuracy;
+  }
+
+  public int treesCount() {
+    return trees.size();
+  }
+
+  public Tree tree(int i) {
+    return trees.get(i);
+  }
+
+  /**
+   * @return class with MIN string-value
+   */
+  public int baseClass() {
+    return baseClass;
+  }
+
+  public Dictionary classDictionary() {
+    return classDictionary;
+  }
+}
@@ -0,0 +1,371 @@
+package com.company.tree;
+
+import com.company.data.ColumnarFile;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Out-of-core training over a {@link ColumnarFile}: the tree is grown level by level, and every level is a
+ * few sequential passes over the file, so the heap holds only the counts of one level, never the rows.
+ * <p>
+ * The node every row belongs to is kept in an int file next to the dataset, it is read and written block by
+ * block through one reusable direct buffer, so passes hold no mappings and the heap and native memory stay
+ * fixed however many rows there are. Rows are indexed by long, class counts of nodes are doubles, which are
+ * exact up to 2^53 rows. A counting pass collects contingency counts of all open nodes of the level at
+ * once, a routing pass then moves rows to the children of split nodes. When the counts of a wide level don't
+ * fit in the budget, its nodes are counted in several passes.
+ * <p>
+ * Splits are chosen exactly as by {@link Tree#makeTree}, so the result is the same tree as long as no column
+ * has missing values: rows can't be split into weighted parts here, so a missing value is counted and routed
+ * as a value of its own. Stopping rules and pruning of the config apply, parallelism settings are ignored.
+ * The listener gets node events with the time of scoring as split search time and no partition time or
+ * allocation.
+ */
+public class LevelWiseTrainer {
+  private static final int BLOCK_ROWS = 1 << 20;
+  private static final long DEFAULT_MAX_COUNTS = 1L << 26;
+  // no node, the row is in a finished leaf
+  private static final int DONE = -1;
+
+  private final ColumnarFile file;
+  private final long rows;
+  private final int classCount;
+  private final int baseClass;
+  private final double probabilityToBaseClass;
+  private final TreeConfig config;
+  private final long maxCounts;
+
+  // buffers of one block of rows
+  private final int[] ids = new int[BLOCK_ROWS];
+  // bytes of ids of the block as they are read from and written to the assignments file
+  private final ByteBuffer idsBytes = ByteBuffer.allocateDirect(BLOCK_ROWS * Integer.BYTES);
+  private final byte[] classes = new byte[BLOCK_ROWS];
+  private final byte[][] columns;
+
+  private LevelWiseTrainer(ColumnarFile file, double probabilityToBaseClass, TreeConfig config, long maxCounts) {
+    this.file = file;
+    this.rows = file.size();
+    this.classCount = file.classDictionary().size();
+    this.baseClass = Node.baseClass(file.classDictionary());
+    this.probabilityToBaseClass = probabilityToBaseClass;
+    this.config = config;
+    this.maxCounts = maxCounts;
+    this.columns = new byte[file.columnCount()][];
+  }
+
+  public static Tree makeTree(
+    ColumnarFile file, Set<Integer> allowedColumnIndexes, double probabilityToBaseClass, TreeConfig config
+  ) throws IOException {
+    return makeTree(file, allowedColumnIndexes, probabilityToBaseClass, config, DEFAULT_MAX_COUNTS);
+  }
+
+  /**
+   * @param maxCounts count of contingency counters a counting pass may hold, bigger levels take more passes
+   */
+  public static Tree makeTree(
+    ColumnarFile file, Set<Integer> allowedColumnIndexes, double probabilityToBaseClass, TreeConfig config,
+    long maxCounts
+  ) throws IOException {
+    if (maxCounts < 1) {
+      throw new IllegalArgumentException("Max counts must be positive, but get " + maxCounts);
+    }
+    var columns = allowedColumnIndexes.stream().mapToInt(Integer::intValue).sorted().toArray();
+    return new LevelWiseTrainer(file, probabilityToBaseClass, config, maxCounts).build(columns);
+  }
+
+  private Tree build(int[] allowedColumnIndexes) throws IOException {
+    var listener = config.listener();
+    long startNanos = System.nanoTime();
+    var assignmentsPath = Files.createTempFile(file.path().toAbsolutePath().getParent(), "assignments-", ".bin");
+    try (var assignments = FileChannel.open(
+      assignmentsPath, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE
+    )) {
+      var rootClassCounts = countRoot(assignments);
+      var root = new OpenNode(rootClassCounts, allowedColumnIndexes, rows, 0);
+
+      var frontier = List.of(root);
+      while (!frontier.isEmpty()) {
+        frontier = growLevel(frontier, assignments);
+      }
+
+      var rootNodes = assemble(root);
+      if (config.isPruning()) {
+        int rootClassCode = Node.chooseClass(rootClassCounts, baseClass, probabilityToBaseClass);
+        rootNodes = Pruning.prune(rootNodes, rootClassCounts, rootClassCode, config.pruningConfidence());
+      }
+      var tree = new Tree(
+        file.columnNames(), file.dictionaries(), file.classDictionary(), rootNodes, rootClassCounts,
+        probabilityToBaseClass
+      );
+      if (listener == TreeListener.NONE) {
+        return tree;
+      }
+      listener.onTreeBuilt(rows, System.nanoTime() - startNanos);
+      return tree.withListener(listener);
+    } finally {
+      Files.deleteIfExists(assignmentsPath);
+    }
+  }
+
+  /**
+   * Counts classes of all rows and assigns every row to the root.
+   */
+  private double[] countRoot(FileChannel assignments) throws IOException {
+    var classCounts = new double[classCount];
+    // node 0 is the root
+    Arrays.fill(ids, 0);
+    for (long from = 0; from < rows; from += BLOCK_ROWS) {
+      int length = (int) Math.min(BLOCK_ROWS, rows - from);
+      file.read(-1, from, ByteBuffer.wrap(classes, 0, length));
+      for (int i = 0; i < length; i++) {
+        classCounts[classes[i] & 0xFF]++;
+      }
+      writeIds(from, length, assignments);
+    }
+    return classCounts;
+  }
+
+  /**
+   * Splits the open nodes of the level, rows of the frontier are routed to their children.
+   *
+   * @return open nodes of the next level
+   */
+  private List<OpenNode> growLevel(List<OpenNode> frontier, FileChannel assignments) throws IOException {
+    var listener = config.listener();
+    var open = new ArrayList<OpenNode>();
+    for (var node : frontier) {
+      if (TreeBuilder.isLeaf(config, node.classCounts, node.allowedColumnIndexes.length, node.depth)) {
+        listener.onLeaf(node.depth, node.size);
+      } else {
+        open.add(node);
+      }
+    }
+
+    // frontier index -> index in open, or DONE
+    var openIds = new int[frontier.size()];
+    Arrays.fill(openIds, DONE);
+    for (int i = 0, o = 0; i < frontier.size(); i++) {
+      if (o < open.size() && frontier.get(i) == open.get(o)) {
+        openIds[i] = o++;
+      }
+    }
+
+    for (int batchFrom = 0; batchFrom < open.size(); ) {
+      long batchCounts = 0;
+      int batchTo = batchFrom;
+      while (
+        batchTo < open.size() && (batchTo == batchFrom || batchCounts + countsSize(open.get(batchTo)) <= maxCounts)
+      ) {
+        batchCounts += countsSize(open.get(batchTo));
+        batchTo++;
+      }
+      count(open, openIds, batchFrom, batchTo, assignments);
+      for (int o = batchFrom; o < batchTo; o++) {
+        split(open.get(o));
+      }
+      batchFrom = batchTo;
+    }
+
+    var next = new ArrayList<OpenNode>();
+    // [open id][value] -> index in next, or DONE
+    var childIds = new int[open.size()][];
+    for (int o = 0; o < open.size(); o++) {
+      var node = open.get(o);
+      if (node.children.isEmpty()) {
+        listener.onLeaf(node.depth, node.size);
+        continue;
+      }
+      var allowedWithoutSplitColumn = Arrays.stream(node.allowedColumnIndexes)
+        .filter(column -> column != node.splitColumn)
+        .toArray();
+      childIds[o] = new int[file.dictionary(node.splitColumn).size()];
+      Arrays.fill(childIds[o], DONE);
+      node.openChildren = new ArrayList<>(node.children.size());
+      for (var child : node.children) {
+        childIds[o][child.columnValue] = next.size();
+        long childSize = (long) Node.weight(child.classCounts);
+        var openChild = new OpenNode(child.classCounts, allowedWithoutSplitColumn, childSize, node.depth + 1);
+        node.openChildren.add(openChild);
+        next.add(openChild);
+      }
+    }
+    route(frontier, openIds, open, childIds, assignments);
+    return next;
+  }
+
+  private long countsSize(OpenNode node) {
+    long size = 0;
+    for (int column : node.allowedColumnIndexes) {
+      size += (long) file.dictionary(column).size() * classCount;
+    }
+    return size;
+  }
+
+  /**
+   * Counting pass of open nodes [batchFrom, batchTo).
+   */
+  private void count(List<OpenNode> open, int[] openIds, int batchFrom, int batchTo, FileChannel assignments)
+    throws IOException {
+    var neededColumns = new boolean[file.columnCount()];
+    for (int o = batchFrom; o < batchTo; o++) {
+      var node = open.get(o);
+      node.counts = new double[node.allowedColumnIndexes.length][];
+      for (int slot = 0; slot < node.allowedColumnIndexes.length; slot++) {
+        int column = node.allowedColumnIndexes[slot];
+        node.counts[slot] = new double[file.dictionary(column).size() * classCount];
+        neededColumns[column] = true;
+      }
+    }
+
+    for (long from = 0; from < rows; from += BLOCK_ROWS) {
+      int length = (int) Math.min(BLOCK_ROWS, rows - from);
+      readBlock(from, length, neededColumns, assignments);
+      for (int i = 0; i < length; i++) {
+        int id = ids[i];
+        if (id == DONE)
+          continue;
+        int o = openIds[id];
+        if (o < batchFrom || o >= batchTo)
+          continue;
+        var node = open.get(o);
+        int classCode = classes[i] & 0xFF;
+        var allowed = node.allowedColumnIndexes;
+        for (int slot = 0; slot < allowed.length; slot++) {
+          node.counts[slot][(columns[allowed[slot]][i] & 0xFF) * classCount + classCode]++;
+        }
+      }
+    }
+  }
+
+  private void split(OpenNode node) {
+    long startNanos = System.nanoTime();
+    var table = ContingencyTable.of(node.allowedColumnIndexes, classCount, node.counts);
+    node.counts = null;
+    var children = Node.makeNodes(table, baseClass, probabilityToBaseClass, config.minGainRatio());
+    if (children.isEmpty()) {
+      return;
+    }
+    node.splitColumn = children.get(0).columnIdx;
+    node.children = children;
+    config.listener().onSplit(
+      node.depth, node.size, node.allowedColumnIndexes.length, System.nanoTime() - startNanos, 0, -1
+    );
+  }
+
+  /**
+   * Routing pass: rows of split nodes move to their children, all other rows of the level are done.
+   */
+  private void route(
+    List<OpenNode> frontier, int[] openIds, List<OpenNode> open, int[][] childIds, FileChannel assignments
+  ) throws IOException {
+    var splitColumns = new boolean[file.columnCount()];
+    for (var node : open) {
+      if (!node.children.isEmpty()) {
+        splitColumns[node.splitColumn] = true;
+      }
+    }
+
+    for (long from = 0; from < rows; from += BLOCK_ROWS) {
+      int length = (int) Math.min(BLOCK_ROWS, rows - from);
+      readBlock(from, length, splitColumns, assignments);
+      for (int i = 0; i < length; i++) {
+        int id = ids[i];
+        if (id == DONE)
+          continue;
+        int o = openIds[id];
+        ids[i] = o == DONE || childIds[o] == null
+          ? DONE
+          : childIds[o][columns[open.get(o).splitColumn][i] & 0xFF];
+      }
+      writeIds(from, length, assignments);
+    }
+  }
+
+  /**
+   * Reads node ids of rows [from, from + length), their classes and the needed columns into the block buffers.
+   */
+  private void readBlock(long from, int length, boolean[] neededColumns, FileChannel assignments)
+    throws IOException {
+    idsBytes.clear().limit(length * Integer.BYTES);
+    long position = from * Integer.BYTES;
+    while (idsBytes.hasRemaining()) {
+      int read = assignments.read(idsBytes, position);
+      if (read < 0) {
+        throw new EOFException("Unexpected end of node ids at row " + (from + idsBytes.position() / Integer.BYTES));
+      }
+      position += read;
+    }
+    idsBytes.flip();
+    idsBytes.asIntBuffer().get(ids, 0, length);
+    file.read(-1, from, ByteBuffer.wrap(classes, 0, length));
+    for (int column = 0; column < neededColumns.length; column++) {
+      if (!neededColumns[column])
+        continue;
+      if (columns[column] == null) {
+        columns[column] = new byte[BLOCK_ROWS];
+      }
+      file.read(column, from, ByteBuffer.wrap(columns[column], 0, length));
+    }
+  }
+
+  /**
+   * Writes node ids of rows [from, from + length) from the block buffer.
+   */
+  private void writeIds(long from, int length, FileChannel assignments) throws IOException {
+    idsBytes.clear();
+    idsBytes.asIntBuffer().put(ids, 0, length);
+    idsBytes.limit(length * Integer.BYTES);
+    long position = from * Integer.BYTES;
+    while (idsBytes.hasRemaining()) {
+      position += assignments.write(idsBytes, position);
+    }
+  }
+
+  /**
+   * Nodes are immutable, so the grown tree is assembled bottom-up once all levels are done.
+   *
+   * @return grown children of the node
+   */
+  private static List<Node> assemble(OpenNode node) {
+    if (node.openChildren == null) {
+      return List.of();
+    }
+    var children = new ArrayList<Node>(node.children.size());
+    for (int i = 0; i < node.children.size(); i++) {
+      var grandchildren = assemble(node.openChildren.get(i));
+      var child = node.children.get(i);
+      children.add(grandchildren.isEmpty() ? child : child.withChildren(grandchildren));
+    }
+    return List.copyOf(children);
+  }
+
+  /**
+   * Node of the level being grown: its children as leaves with their open nodes once it is split, and the
+   * counts of its rows while they are collected.
+   */
+  private static class OpenNode {
+    final double[] classCounts;
+    final int[] allowedColumnIndexes;
+    final long size;
+    final int depth;
+    List<Node> children = List.of();
+    // open nodes of the children in the same order, null until the node is split
+    List<OpenNode> openChildren;
+    double[][] counts;
+    int splitColumn = -1;
+
+    OpenNode(double[] classCounts, int[] allowedColumnIndexes, long size, int depth) {
+      this.classCounts = classCounts;
+      this.allowedColumnIndexes = allowedColumnIndexes;
+      this.size = size;
+      this.depth = depth;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.company.tree;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Current version of a model shared by scoring threads, e.g. a {@link Tree} or a {@link Forest}. A retrained
+ * model replaces the current one atomically without locks: predictions started before the swap keep running
+ * on the model they got, later ones see the new model.
+ * <p>
+ * Scoring code must read the model once per request and use that reference throughout, reading the holder
+ * again may return another version.
+ */
+public class ModelHolder<M> {
+  private final AtomicReference<Version<M>> current;
+
+  public ModelHolder(M model) {
+    this.current = new AtomicReference<>(new Version<>(Objects.requireNonNull(model), 1));
+  }
+
+  public M get() {
+    return current.get().model;
+  }
+
+  /**
+   * @return count of models held so far, the initial one is version 1
+   */
+  public long version() {
+    return current.get().number;
+  }
+
+  /**
+   * Publishes the model.
+   *
+   * @return the replaced model
+   */
+  public M swap(M model) {
+    Objects.requireNonNull(model);
+    while (true) {
+      var version = current.get();
+      if (current.compareAndSet(version, new Version<>(model, version.number + 1))) {
+        return version.model;
+      }
+    }
+  }
+
+  /**
+   * Publishes the model only if the expected one is still current, so of two concurrent retrainings started
+   * from the same model only one wins.
+   *
+   * @return whether the model was published
+   */
+  public boolean compareAndSwap(M expected, M model) {
+    Objects.requireNonNull(model);
+    var version = current.get();
+    return version.model == expected && current.compareAndSet(version, new Version<>(model, version.number + 1));
+  }
+
+  private static class Version<M> {
+    final M model;
+    final long number;
+
+    Version(M model, long number) {
+      this.model = model;
+      this.number = number;
+    }
+  }
+}
@@ -1,222 +1,267 @@
 package com.company.tree;
 
+import com.company.data.Dataset;
+import com.company.data.Dictionary;
 import com.company.utils.Pair;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
+/**
+ * Immutable tree node, it keeps copies of the class counts and children it is given. Trees are assembled
+ * bottom-up: a node is created as a leaf by the split search and replaced by {@link #withChildren} once its
+ * subtree is grown, so a published tree never changes.
+ */
 public class Node {
-  final Node parent;
   final List<Node> children;
   final int columnIdx;
-  final String columnValue;
-  final String prevailingClassValue;
+  final int columnValue;
+  final int prevailingClassValue;
   final double classProbability;
+  // weights of the rows of every class, fractional when rows with missing values were shared between siblings
+  final double[] classCounts;
 
-  private Node(Node parent, int columnIdx, String columnValue, String prevailingClassValue, double classProbability) {
-    this.parent = parent;
+  Node(int columnIdx, int columnValue, int prevailingClassValue, double classProbability, double[] classCounts) {
+    this(columnIdx, columnValue, prevailingClassValue, classProbability, classCounts, List.of());
+  }
+
+  /**
+   * @param classCounts copied
+   * @param children copied into an unmodifiable list
+   */
+  Node(
+    int columnIdx, int columnValue, int prevailingClassValue, double classProbability, double[] classCounts,
+    List<Node> children
+  ) {
     this.columnIdx = columnIdx;
     this.columnValue = columnValue;
     this.prevailingClassValue = prevailingClassValue;
     this.classProbability = classProbability;
-    this.children = new LinkedList<>();
+    this.classCounts = classCounts.clone();
+    this.children = List.copyOf(children);
+  }
+
+  private Node(Node node, List<Node> children) {
+    this.columnIdx = node.columnIdx;
+    this.columnValue = node.columnValue;
+    this.prevailingClassValue = node.prevailingClassValue;
+    this.classProbability = node.classProbability;
+    this.classCounts = node.classCounts;
+    this.children = List.copyOf(children);
   }
 
+  /**
+   * @return the same node with another subtree, class counts are shared
+   */
+  Node withChildren(List<Node> children) {
+    return new Node(this, children);
+  }
+
+  /**
+   * Children get no node for the missing value, their class counts include the fractional shares of missing
+   * rows. Every value with rows gets a child however little it weighs.
+   *
+   * @return children by values of the column of the table with max gain ratio, empty if the ratio is below
+   * minGainRatio
+   */
   static List<Node> makeNodes(
-    Node parentNode,
-    Set<Integer> allowedColumnIndexes,
-    List<String> classes,
-    List<? extends List<String>> attrValues,
-    double probabilityToBaseClass // necessaryProbabilityToBaseClass
+    ContingencyTable table, int baseClass, double probabilityToBaseClass, double minGainRatio
   ) {
-    if (allowedColumnIndexes.isEmpty()) {
-      throw new IllegalArgumentException("Allowed columns must not be empty");
+    var maxGainRatio = findMaxGainRatio(table);
+    if (minGainRatio > 0. && maxGainRatio.second < minGainRatio) {
+      return new ArrayList<>();
+    }
+    int targetSlot = maxGainRatio.first;
+    int targetColumnIdx = table.columns[targetSlot];
+    int missingCode = table.missingCodes[targetSlot];
+    // rows with the missing value go to every child in the proportion of its known rows
+    var missingClassCounts = new double[table.classCount];
+    double knownCount = table.size;
+    if (missingCode != -1) {
+      for (int classCode = 0; classCode < table.classCount; classCode++) {
+        missingClassCounts[classCode] = table.count(targetSlot, missingCode, classCode);
+      }
+      knownCount -= table.valueCount(targetSlot, missingCode);
     }
 
-    Pair<Integer, Double> maxGainRatio = null;
-
-    for (int columnIdx : allowedColumnIndexes) {
-      var gainRatio = calcGainRatio(columnIdx, classes, attrValues);
-      if (maxGainRatio == null || maxGainRatio.second < gainRatio) {
-        maxGainRatio = Pair.of(columnIdx, gainRatio);
+    var nodes = new ArrayList<Node>();
+    for (int value = 0; value < table.valuesSize(targetSlot); value++) {
+      double valueCount = table.valueCount(targetSlot, value);
+      if (value == missingCode || valueCount == 0.)
+        continue;
+
+      double missingShare = valueCount / knownCount;
+      var classCounts = new double[table.classCount];
+      for (int classCode = 0; classCode < table.classCount; classCode++) {
+        double missingCount = missingShare * missingClassCounts[classCode];
+        classCounts[classCode] = table.count(targetSlot, value, classCode) + missingCount;
       }
+      int classCode = chooseClass(classCounts, baseClass, probabilityToBaseClass);
+      nodes.add(new Node(targetColumnIdx, value, classCode, classProbability(classCounts, classCode), classCounts));
     }
+    return nodes;
+  }
 
-    var targetAttrValues = new HashSet<String>();
-    var classFrequenciesByTargetAttrValue = new HashMap<String, HashMap<String, Integer>>();
-
-    for (int i = 0; i < attrValues.size(); i++) {
-      var localAttrValues = attrValues.get(i);
-      var targetAttrValue = localAttrValues.get(maxGainRatio.first);
-      var curClass = classes.get(i);
-      var curClassFrequenciesOfTargetAttrValue = classFrequenciesByTargetAttrValue
-        .getOrDefault(targetAttrValue, new HashMap<>());
-      var curClassCount = curClassFrequenciesOfTargetAttrValue.getOrDefault(curClass, 0);
-      curClassCount++;
-      curClassFrequenciesOfTargetAttrValue.put(curClass, curClassCount);
-      classFrequenciesByTargetAttrValue.put(targetAttrValue, curClassFrequenciesOfTargetAttrValue);
-      targetAttrValues.add(targetAttrValue);
+  /**
+   * Base class is reported when its probability reaches probabilityToBaseClass, otherwise the most frequent
+   * of other classes is. Classes absent in the counts are never reported while there are present ones.
+   */
+  static int chooseClass(double[] classCounts, int baseClass, double probabilityToBaseClass) {
+    if (classCounts[baseClass] > 0. && classProbability(classCounts, baseClass) >= probabilityToBaseClass) {
+      return baseClass;
     }
+    int otherClass = prevailingOtherClass(classCounts, baseClass);
+    return otherClass != -1 ? otherClass : baseClass;
+  }
 
-    Pair<Integer, Double> finalMaxGainRatio = maxGainRatio;
-    return targetAttrValues.stream()
-      .map(value -> {
-        AtomicInteger countOfClasses = new AtomicInteger();
-        var prevailingClassValueWithCount = classFrequenciesByTargetAttrValue
-          .get(value).entrySet().stream()
-          .peek(entry -> countOfClasses.addAndGet(entry.getValue()))
-          .max(Map.Entry.comparingByValue())
-          .get();
-
-        var notPrevailingClassValueWithCount = classFrequenciesByTargetAttrValue
-          .get(value).entrySet().stream()
-          .peek(entry -> countOfClasses.addAndGet(entry.getValue()))
-          .min(Map.Entry.comparingByValue())
-          .get();
-
-        var prevailingClassProbability = ((double) prevailingClassValueWithCount.getValue()) / ((double) countOfClasses.get());
-        var notPrevailingClassProbability = ((double) notPrevailingClassValueWithCount.getValue()) / ((double) countOfClasses.get());
-        // BaseClass -- class with MIN string-value
-
-        if (prevailingClassValueWithCount.getKey().compareTo(notPrevailingClassValueWithCount.getKey()) > 0) {
-          var tmpProbability = prevailingClassProbability;
-          prevailingClassProbability = notPrevailingClassProbability;
-          notPrevailingClassProbability = tmpProbability;
-          var tmpClassValueWithCount = prevailingClassValueWithCount;
-          prevailingClassValueWithCount = notPrevailingClassValueWithCount;
-          notPrevailingClassValueWithCount = tmpClassValueWithCount;
-        }
-
-        if (prevailingClassProbability >= probabilityToBaseClass) {
-          return new Node(
-            parentNode, finalMaxGainRatio.first, value,
-            prevailingClassValueWithCount.getKey(),
-            prevailingClassProbability
-          );
-        } else {
-          return new Node(
-            parentNode, finalMaxGainRatio.first, value,
-            notPrevailingClassValueWithCount.getKey(),
-            notPrevailingClassProbability
-          );
-        }
-      })
-      .collect(Collectors.toList());
-  }
-
-  void addChildren(List<Node> children) {
-    this.children.addAll(children);
-  }
-
-  private static double calcGainRatio(int targetAttrIndex, List<String> classes, List<? extends List<String>> attrValues) {
-    double info = calcInfo(classes, attrValues);
-    double targetInfo = calcInfoByAttr(targetAttrIndex, classes, attrValues);
-    double splitInfo = calcSplitInfoByAttr(targetAttrIndex, attrValues);
-
-    return (info - targetInfo) / splitInfo;
-  }
-
-  private static double calcInfoByAttr(
-    int targetAttrIndex, List<String> classes, List<? extends List<String>> attrValues
-  ) {
-    if (classes.size() != attrValues.size()) {
-      var message = "Size of classes is " + classes.size() + ". " +
-        "But size of attrValues is " + attrValues.size();
-      throw new IllegalArgumentException(message);
+  /**
+   * @return the most frequent class except the base one or -1 if there are no such classes in the counts
+   */
+  static int prevailingOtherClass(double[] classCounts, int baseClass) {
+    int otherClass = -1;
+    for (int classCode = 0; classCode < classCounts.length; classCode++) {
+      if (classCode == baseClass || classCounts[classCode] == 0.)
+        continue;
+      if (otherClass == -1 || classCounts[otherClass] < classCounts[classCode])
+        otherClass = classCode;
     }
-    int size = classes.size();
-    var attrsByTargetAttrValue = new HashMap<String, List<List<String>>>();
-    var classesByTargetAttrValue = new HashMap<String, List<String>>();
-
-    for (int i = 0; i < size; i++) {
-      String targetAttrValue = attrValues.get(i).get(targetAttrIndex);
-      var curAttrValues = attrValues.get(i);
-      var curClass = classes.get(i);
-
-      var attrsInMap = attrsByTargetAttrValue.get(targetAttrValue);
-      var classesInMap = classesByTargetAttrValue.get(targetAttrValue);
-
-      if (classesInMap == null) {
-        classesInMap = new LinkedList<>();
-        attrsInMap = new LinkedList<>();
-        classesByTargetAttrValue.put(targetAttrValue, classesInMap);
-        attrsByTargetAttrValue.put(targetAttrValue, attrsInMap);
-      }
+    return otherClass;
+  }
 
-      classesInMap.add(curClass);
-      attrsInMap.add(curAttrValues);
+  /**
+   * @return class with MIN string-value, which is the class a threshold is applied to
+   */
+  static int baseClass(Dictionary classDictionary) {
+    int baseClass = 0;
+    for (int classCode = 1; classCode < classDictionary.size(); classCode++) {
+      if (classDictionary.valueOf(classCode).compareTo(classDictionary.valueOf(baseClass)) < 0)
+        baseClass = classCode;
     }
+    return baseClass;
+  }
 
-    return classesByTargetAttrValue.entrySet().stream()
-      .mapToDouble(entry -> {
-        var targetAttrValue = entry.getKey();
-        var curClasses = entry.getValue();
-        var curAttrs = attrsByTargetAttrValue.get(targetAttrValue);
+  static double classProbability(double[] classCounts, int classCode) {
+    return classCounts[classCode] / weight(classCounts);
+  }
 
-        return ((double) curClasses.size()) / ((double) size) * calcInfo(curClasses, curAttrs);
-      })
-      .sum();
+  /**
+   * @return weight of the rows of the counts, which is their count if no row was shared
+   */
+  static double weight(double[] classCounts) {
+    double weight = 0.;
+    for (double count : classCounts) {
+      weight += count;
+    }
+    return weight;
   }
 
-  private static double calcSplitInfoByAttr(
-    int targetAttrIndex, List<? extends List<String>> attrsValues
-  ) {
-    int size = attrsValues.size();
+  /**
+   * Split search over all rows of the dataset, which is what {@link #makeNodes} does for a node.
+   *
+   * @return column with max gain ratio among given ones
+   */
+  public static int findBestColumn(Dataset data, int[] columnIndexes) {
+    return findBestColumn(data, columnIndexes, null);
+  }
 
-    var frequenciesOfTargetTypeValues = new HashMap<String, Integer>();
+  /**
+   * Split search over all rows counted from codes packed beforehand, see {@link TreeConfig#withPackedCounting}.
+   *
+   * @param packedCodes codes of the dataset packed for the columns or more, null to scan columns
+   */
+  public static int findBestColumn(Dataset data, int[] columnIndexes, PackedCodes packedCodes) {
+    var rows = Rows.identity(data.size(), false);
+    var table = packedCodes != null
+      ? packedCodes.count(columnIndexes, rows, 0, rows.limit())
+      : ContingencyTable.count(data, columnIndexes, rows, 0, rows.limit(), false);
+    return columnIndexes[findMaxGainRatio(table).first];
+  }
 
-    for (List<String> attr : attrsValues) {
-      String targetAttrValue = attr.get(targetAttrIndex);
-      int count = frequenciesOfTargetTypeValues.getOrDefault(targetAttrValue, 0);
-      count++;
-      frequenciesOfTargetTypeValues.put(targetAttrValue, count);
-    }
+  /**
+   * @return slot of the column with max gain ratio with the ratio
+   */
+  private static Pair<Integer, Double> findMaxGainRatio(ContingencyTable table) {
+    double info = calcInfo(table);
 
-    double result = frequenciesOfTargetTypeValues.values().stream()
-      .mapToDouble(count -> {
-        double quotient = ((double) count) / ((double) size);
-        return quotient * log2(quotient);
-      })
-      .sum();
+    Pair<Integer, Double> maxGainRatio = null;
 
-    return -result;
+    for (int slot = 0; slot < table.columns.length; slot++) {
+      var gainRatio = calcGainRatio(info, slot, table);
+      if (maxGainRatio == null || maxGainRatio.second < gainRatio) {
+        maxGainRatio = Pair.of(slot, gainRatio);
+      }
+    }
+    return maxGainRatio;
   }
 
-  private static double calcInfo(List<String> classes, List<? extends List<String>> attrs) {
-    int size = attrs.size();
-    var frequencies = new HashMap<String, Integer>();
+  /**
+   * @return gain ratio of the slot's column, as the split search scores it
+   */
+  static double gainRatio(ContingencyTable table, int slot) {
+    return calcGainRatio(calcInfo(table), slot, table);
+  }
 
-    for (int i = 0; i < size; i++) {
-      var classValue = classes.get(i);
-      Integer prevResult = frequencies.getOrDefault(classValue, 0);
-      prevResult++;
-      frequencies.put(classValue, prevResult);
+  /**
+   * Gain ratio of C4.5 with missing values: gain is computed over rows with a known value and scaled by their
+   * share, split info counts missing values as one more branch.
+   */
+  private static double calcGainRatio(double info, int slot, ContingencyTable table) {
+    int missingCode = table.missingCodes[slot];
+    double missingCount = missingCode != -1 ? table.valueCount(slot, missingCode) : 0.;
+    double knownCount = table.size - missingCount;
+    if (knownCount <= 0.) {
+      return 0.;
+    }
+    if (missingCount > 0.) {
+      info = calcKnownInfo(slot, table, knownCount);
+    }
+    double targetInfo = calcInfoByAttr(slot, table, knownCount);
+    double splitInfo = calcSplitInfoByAttr(slot, table);
+    if (splitInfo == 0.) {
+      // all rows have the same value, so there is nothing to gain
+      return 0.;
     }
 
-    double result = frequencies.values().stream()
-      .mapToDouble(count -> ((double) count) / ((double) size) * log2(count))
-      .sum();
-    return -result;
+    double gain = info - targetInfo;
+    if (missingCount > 0.) {
+      gain *= knownCount / table.size;
+    }
+    return gain / splitInfo;
   }
 
-
-  private static double log2(double x) {
-    double r = 1;
-    double l = 0;
-    while (Math.pow(2., r) < x) {
-      r++;
+  private static double calcInfoByAttr(int slot, ContingencyTable table, double knownCount) {
+    int missingCode = table.missingCodes[slot];
+    double result = 0;
+    for (int value = 0; value < table.valuesSize(slot); value++) {
+      double valueCount = table.valueCount(slot, value);
+      if (valueCount == 0. || value == missingCode)
+        continue;
+      result += Entropy.scaledInfo(table.counts[slot], value * table.classCount, table.classCount, valueCount);
     }
+    return result / knownCount;
+  }
 
-    for (int i = 0; i < 100; i++) {
-      double med = (l + r) / 2.;
-      if (Math.pow(2., med) < x) {
-        l = med;
-      } else {
-        r = med;
+  private static double calcSplitInfoByAttr(int slot, ContingencyTable table) {
+    var valueCounts = table.valueCounts[slot];
+    return Entropy.scaledInfo(valueCounts, 0, valueCounts.length, table.size) / table.size;
+  }
+
+  private static double calcInfo(ContingencyTable table) {
+    return Entropy.scaledInfo(table.classCounts, 0, table.classCount, table.size) / table.size;
+  }
+
+  /**
+   * @return entropy of classes of the rows with a known value of the slot's column
+   */
+  private static double calcKnownInfo(int slot, ContingencyTable table, double knownCount) {
+    int missingCode = table.missingCodes[slot];
+    var knownClassCounts = new double[table.classCount];
+    for (int value = 0; value < table.valuesSize(slot); value++) {
+      if (value == missingCode)
+        continue;
+      for (int classCode = 0; classCode < table.classCount; classCode++) {
+        knownClassCounts[classCode] += table.count(slot, value, classCode);
       }
     }
-
-    return (l + r) / 2.;
+    return Entropy.scaledInfo(knownClassCounts, 0, table.classCount, knownCount) / knownCount;
   }
 }
@@ -0,0 +1,318 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+import com.company.utils.Pair;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of leaves in front of a compiled tree. A row is keyed by the value codes of only the columns
+ * the tree splits on, packed into a long, so rows differing in other columns share an entry and a repeated
+ * combination costs one hash probe instead of a tree walk.
+ * <p>
+ * Keys are spread over {@value #SEGMENTS} segments, each an open-addressing table with its own lock and
+ * least-recently-used eviction, so concurrent lookups mostly take different locks. Leaves of missed rows are
+ * found outside of the locks. Scored datasets must be encoded with the dictionaries of the tree, as for
+ * {@link CompiledTree} itself, other ones are rejected once per dataset. Codes of other dictionaries could
+ * overflow their bits of the key and collide.
+ */
+public class PredictionCache {
+  private static final int SEGMENT_BITS = 4;
+  private static final int SEGMENTS = 1 << SEGMENT_BITS;
+  private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+  private final CompiledTree tree;
+  private final int[] keyColumns;
+  private final int[] keyShifts;
+  private final Segment[] segments;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * @param capacity max count of cached keys, rounded up to a multiple of {@value #SEGMENTS}
+   */
+  public PredictionCache(CompiledTree tree, int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive, but get " + capacity);
+    }
+    this.tree = tree;
+    this.keyColumns = Arrays.stream(tree.splitColumns)
+      .filter(column -> column >= 0)
+      .distinct()
+      .sorted()
+      .toArray();
+    this.keyShifts = new int[keyColumns.length];
+    int bits = 0;
+    for (int i = 0; i < keyColumns.length; i++) {
+      keyShifts[i] = bits;
+      bits += bitsOf(tree.dictionary(keyColumns[i]).unknownCode() + 1);
+    }
+    if (bits > Long.SIZE) {
+      throw new IllegalArgumentException(
+        "Expect at most " + Long.SIZE + " bits of key, but columns " + Arrays.toString(keyColumns) +
+          " take " + bits
+      );
+    }
+
+    int segmentCapacity = (capacity + SEGMENTS - 1) / SEGMENTS;
+    this.segments = new Segment[SEGMENTS];
+    for (int i = 0; i < SEGMENTS; i++) {
+      segments[i] = new Segment(segmentCapacity);
+    }
+  }
+
+  /**
+   * @return id of the leaf the row falls into
+   */
+  public int leaf(Dataset data, int row) {
+    tree.checkEncoding(data);
+    long key = key(data, row);
+    long hash = hash(key);
+    var segment = segments[(int) (hash >>> (Long.SIZE - SEGMENT_BITS))];
+    int leaf = segment.get(key);
+    if (leaf >= 0) {
+      hits.increment();
+      return leaf;
+    }
+    misses.increment();
+    leaf = tree.checkedLeaf(data, row);
+    if (segment.put(key, leaf)) {
+      evictions.increment();
+    }
+    return leaf;
+  }
+
+  /**
+   * @return code of predicted class with its probability
+   */
+  public Pair<Integer, Double> predict(Dataset data, int row) {
+    int leaf = leaf(data, row);
+    return Pair.of(tree.classCode(leaf), tree.probability(leaf));
+  }
+
+  public int predictClass(Dataset data, int row) {
+    return tree.classCode(leaf(data, row));
+  }
+
+  /**
+   * @param probabilityToBaseClass probability of the base class necessary to report it
+   */
+  public int predictClass(Dataset data, int row, double probabilityToBaseClass) {
+    return tree.classCode(leaf(data, row), probabilityToBaseClass);
+  }
+
+  /**
+   * @return columns whose value codes make the key, in order from the lowest bits
+   */
+  public int[] keyColumns() {
+    return keyColumns.clone();
+  }
+
+  public long hitCount() {
+    return hits.sum();
+  }
+
+  public long missCount() {
+    return misses.sum();
+  }
+
+  public long evictionCount() {
+    return evictions.sum();
+  }
+
+  /**
+   * @return share of lookups answered from the cache, NaN before the first lookup
+   */
+  public double hitRate() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    return lookups == 0 ? Double.NaN : (double) hitCount / lookups;
+  }
+
+  /**
+   * @return count of cached keys
+   */
+  public int size() {
+    int size = 0;
+    for (var segment : segments) {
+      size += segment.size();
+    }
+    return size;
+  }
+
+  public int capacity() {
+    return segments[0].capacity * SEGMENTS;
+  }
+
+  /**
+   * Drops all cached keys, statistics are kept.
+   */
+  public void clear() {
+    for (var segment : segments) {
+      segment.clear();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "PredictionCache{size=" + size() + ", capacity=" + capacity() + ", hits=" + hitCount() +
+      ", misses=" + missCount() + ", evictions=" + evictionCount() + "}";
+  }
+
+  private long key(Dataset data, int row) {
+    long key = 0;
+    for (int i = 0; i < keyColumns.length; i++) {
+      key |= (long) data.value(keyColumns[i], row) << keyShifts[i];
+    }
+    return key;
+  }
+
+  private static long hash(long key) {
+    return key * HASH_MULTIPLIER;
+  }
+
+  private static int bitsOf(int valuesSize) {
+    return valuesSize <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(valuesSize - 1);
+  }
+
+  /**
+   * Linear-probing table of entry indexes over entry arrays, entries are linked in order of use. The table
+   * is at most half full, removal shifts following slots back instead of leaving tombstones.
+   */
+  private static class Segment {
+    private final int capacity;
+    private final int mask;
+    // entry of every slot, -1 if the slot is free
+    private final int[] table;
+    private final long[] keys;
+    private final int[] leaves;
+    // list of entries from the most recently used head to the least recently used tail
+    private final int[] previous;
+    private final int[] next;
+    private int head = -1;
+    private int tail = -1;
+    private int size;
+
+    Segment(int capacity) {
+      this.capacity = capacity;
+      this.table = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+      this.mask = table.length - 1;
+      this.keys = new long[capacity];
+      this.leaves = new int[capacity];
+      this.previous = new int[capacity];
+      this.next = new int[capacity];
+      Arrays.fill(table, -1);
+    }
+
+    /**
+     * @return cached leaf of the key, -1 if there is none
+     */
+    synchronized int get(long key) {
+      for (int slot = slot(key); table[slot] >= 0; slot = (slot + 1) & mask) {
+        int entry = table[slot];
+        if (keys[entry] == key) {
+          if (entry != head) {
+            unlink(entry);
+            linkHead(entry);
+          }
+          return leaves[entry];
+        }
+      }
+      return -1;
+    }
+
+    /**
+     * @return whether the least recently used key was evicted for this one
+     */
+    synchronized boolean put(long key, int leaf) {
+      int slot = slot(key);
+      for (; table[slot] >= 0; slot = (slot + 1) & mask) {
+        if (keys[table[slot]] == key)
+          return false; // put by another thread since the miss
+      }
+
+      int entry;
+      boolean evicted = size == capacity;
+      if (evicted) {
+        entry = tail;
+        unlink(entry);
+        remove(keys[entry]);
+        // removal shifts slots, so the free slot of the key may have moved
+        slot = slot(key);
+        while (table[slot] >= 0) {
+          slot = (slot + 1) & mask;
+        }
+      } else {
+        entry = size++;
+      }
+      keys[entry] = key;
+      leaves[entry] = leaf;
+      table[slot] = entry;
+      linkHead(entry);
+      return evicted;
+    }
+
+    synchronized int size() {
+      return size;
+    }
+
+    synchronized void clear() {
+      Arrays.fill(table, -1);
+      head = -1;
+      tail = -1;
+      size = 0;
+    }
+
+    /**
+     * Segments are chosen by the top bits of the hash, slots by the middle ones.
+     */
+    private int slot(long key) {
+      return (int) (hash(key) >>> Integer.SIZE) & mask;
+    }
+
+    private void remove(long key) {
+      int hole = slot(key);
+      while (keys[table[hole]] != key) {
+        hole = (hole + 1) & mask;
+      }
+      for (int slot = (hole + 1) & mask; table[slot] >= 0; slot = (slot + 1) & mask) {
+        int home = slot(keys[table[slot]]);
+        // the entry may fill the hole if the hole lies between its home slot and its slot
+        if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+          table[hole] = table[slot];
+          hole = slot;
+        }
+      }
+      table[hole] = -1;
+    }
+
+    private void unlink(int entry) {
+      int previousEntry = previous[entry];
+      int nextEntry = next[entry];
+      if (previousEntry >= 0) {
+        next[previousEntry] = nextEntry;
+      } else {
+        head = nextEntry;
+      }
+      if (nextEntry >= 0) {
+        previous[nextEntry] = previousEntry;
+      } else {
+        tail = previousEntry;
+      }
+    }
+
+    private void linkHead(int entry) {
+      previous[entry] = -1;
+      next[entry] = head;
+      if (head >= 0) {
+        previous[head] = entry;
+      }
+      head = entry;
+      if (tail < 0) {
+        tail = entry;
+      }
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package com.company.tree;
+
+/**
+ * Results of batch prediction, i-th element belongs to i-th row of the scored dataset.
+ */
+public class Predictions {
+  private final int[] classCodes;
+  private final double[] probabilities;
+
+  Predictions(int[] classCodes, double[] probabilities) {
+    this.classCodes = classCodes;
+    this.probabilities = probabilities;
+  }
+
+  public int size() {
+    return classCodes.length;
+  }
+
+  public int classCode(int row) {
+    return classCodes[row];
+  }
+
+  public double probability(int row) {
+    return probabilities[row];
+  }
+
+  public int[] classCodes() {
+    return classCodes;
+  }
+
+  public double[] probabilities() {
+    return probabilities;
+  }
+}
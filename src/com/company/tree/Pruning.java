@@ -0,0 +1,130 @@
+package com.company.tree;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * C4.5 pessimistic error pruning. Errors of a node are estimated by the upper limit of the binomial
+ * confidence interval of its training errors, a subtree is replaced by a leaf when the leaf is estimated
+ * to make no more errors than the leaves of the subtree. Nodes are visited bottom-up, so a replaced
+ * subtree is already pruned itself. Subtree raising of C4.5 is not done.
+ */
+class Pruning {
+  // C4.5 prefers a leaf a little even when the subtree looks slightly better
+  private static final double LEAF_PREFERENCE = 0.1;
+
+  private Pruning() {
+  }
+
+  /**
+   * Nodes are immutable, so pruned subtrees are rebuilt, untouched subtrees are shared with the given ones.
+   *
+   * @param rootNodes children of the root
+   * @param rootClassCounts class counts of the root
+   * @param rootClassCode class the root predicts
+   * @return children of the pruned root, empty if the whole tree is pruned to the root
+   */
+  static List<Node> prune(List<Node> rootNodes, double[] rootClassCounts, int rootClassCode, double confidence) {
+    return prune(rootNodes, rootClassCounts, rootClassCode, confidence, new double[1]);
+  }
+
+  /**
+   * @param children children of the node
+   * @param classCounts class counts of the node
+   * @param classCode class the node predicts
+   * @param errors receives estimated errors of the node after pruning
+   * @return children of the pruned node
+   */
+  private static List<Node> prune(
+    List<Node> children, double[] classCounts, int classCode, double confidence, double[] errors
+  ) {
+    double leafErrors = leafErrors(classCounts, classCode, confidence);
+    if (children.isEmpty()) {
+      errors[0] = leafErrors;
+      return children;
+    }
+
+    double subtreeErrors = 0.;
+    boolean changed = false;
+    var prunedChildren = new ArrayList<Node>(children.size());
+    for (var child : children) {
+      var grandchildren = prune(child.children, child.classCounts, child.prevailingClassValue, confidence, errors);
+      subtreeErrors += errors[0];
+      if (grandchildren == child.children) {
+        prunedChildren.add(child);
+      } else {
+        prunedChildren.add(child.withChildren(grandchildren));
+        changed = true;
+      }
+    }
+    if (leafErrors <= subtreeErrors + LEAF_PREFERENCE) {
+      errors[0] = leafErrors;
+      return List.of();
+    }
+    errors[0] = subtreeErrors;
+    return changed ? List.copyOf(prunedChildren) : children;
+  }
+
+  /**
+   * Counts may be fractional, as are the sizes and errors of C4.5 with missing values.
+   */
+  private static double leafErrors(double[] classCounts, int classCode, double confidence) {
+    double size = Node.weight(classCounts);
+    double errors = size - classCounts[classCode];
+    return errors + extraErrors(size, errors, confidence);
+  }
+
+  /**
+   * Port of addErrs of C4.5: the upper confidence limit of errors in size rows minus the observed errors.
+   */
+  static double extraErrors(double size, double errors, double confidence) {
+    if (size == 0.) {
+      return 0.;
+    }
+    if (errors < 1.) {
+      // exact binomial limit for zero errors, interpolated between 0 and 1 errors
+      double base = size * (1. - Math.pow(confidence, 1. / size));
+      return errors == 0. ? base : base + errors * (extraErrors(size, 1., confidence) - base);
+    }
+    if (errors + 0.5 >= size) {
+      return Math.max(size - errors, 0.);
+    }
+
+    double z = normalInverse(1. - confidence);
+    double f = (errors + 0.5) / size;
+    double r = (f + z * z / (2. * size) + z * Math.sqrt(f / size - f * f / size + z * z / (4. * size * size)))
+      / (1. + z * z / size);
+    return r * size - errors;
+  }
+
+  /**
+   * Inverse of the standard normal distribution function by the rational approximation of Acklam, the
+   * relative error is below 1.15e-9.
+   */
+  static double normalInverse(double p) {
+    final double a1 = -3.969683028665376e+01, a2 = 2.209460984245205e+02, a3 = -2.759285104469687e+02,
+      a4 = 1.383577518672690e+02, a5 = -3.066479806614716e+01, a6 = 2.506628277459239e+00;
+    final double b1 = -5.447609879822406e+01, b2 = 1.615858368580409e+02, b3 = -1.556989798598866e+02,
+      b4 = 6.680131188771972e+01, b5 = -1.328068155288572e+01;
+    final double c1 = -7.784894002430293e-03, c2 = -3.223964580411365e-01, c3 = -2.400758277161838e+00,
+      c4 = -2.549732539343734e+00, c5 = 4.374664141464968e+00, c6 = 2.938163982698783e+00;
+    final double d1 = 7.784695709041462e-03, d2 = 3.224671290700398e-01, d3 = 2.445134137142996e+00,
+      d4 = 3.754408661907416e+00;
+    final double low = 0.02425;
+
+    if (p < low) {
+      double q = Math.sqrt(-2. * Math.log(p));
+      return (((((c1 * q + c2) * q + c3) * q + c4) * q + c5) * q + c6)
+        / ((((d1 * q + d2) * q + d3) * q + d4) * q + 1.);
+    }
+    if (p > 1. - low) {
+      double q = Math.sqrt(-2. * Math.log(1. - p));
+      return -(((((c1 * q + c2) * q + c3) * q + c4) * q + c5) * q + c6)
+        / ((((d1 * q + d2) * q + d3) * q + d4) * q + 1.);
+    }
+    double q = p - 0.5;
+    double r = q * q;
+    return (((((a1 * r + a2) * r + a3) * r + a4) * r + a5) * r + a6) * q
+      / (((((b1 * r + b2) * r + b3) * r + b4) * r + b5) * r + 1.);
+  }
+}
@@ -0,0 +1,45 @@
+package com.company.tree;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Row-index buffers trees are grown over, either heap arrays or direct memory outside of the Java heap.
+ */
+class Rows {
+  private Rows() {
+  }
+
+  /**
+   * @return buffer of rows 0, 1, ..., size - 1
+   */
+  static IntBuffer identity(int size, boolean offHeap) {
+    var rows = offHeap ? allocateDirect(size) : IntBuffer.allocate(size);
+    for (int i = 0; i < size; i++) {
+      rows.put(i, i);
+    }
+    return rows;
+  }
+
+  /**
+   * @return the given rows, copied off-heap if asked to, the array itself is wrapped otherwise
+   */
+  static IntBuffer of(int[] rows, boolean offHeap) {
+    if (!offHeap) {
+      return IntBuffer.wrap(rows);
+    }
+    var result = allocateDirect(rows.length);
+    result.put(0, rows);
+    return result;
+  }
+
+  static IntBuffer allocateDirect(int size) {
+    if (size > Integer.MAX_VALUE / Integer.BYTES) {
+      throw new IllegalArgumentException(
+        "Expect at most " + Integer.MAX_VALUE / Integer.BYTES + " off-heap rows, but get " + size
+      );
+    }
+    return ByteBuffer.allocateDirect(size * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+  }
+}
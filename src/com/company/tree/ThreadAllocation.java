@@ -0,0 +1,33 @@
+package com.company.tree;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Counter of bytes allocated by the current thread, backed by the HotSpot extension of ThreadMXBean.
+ */
+class ThreadAllocation {
+  private static final com.sun.management.ThreadMXBean THREAD_BEAN = threadBean();
+
+  private ThreadAllocation() {
+  }
+
+  /**
+   * @return bytes allocated by the current thread so far, -1 if the JVM doesn't count them
+   */
+  static long allocatedBytes() {
+    return THREAD_BEAN != null ? THREAD_BEAN.getCurrentThreadAllocatedBytes() : -1;
+  }
+
+  private static com.sun.management.ThreadMXBean threadBean() {
+    var bean = ManagementFactory.getThreadMXBean();
+    if (!(bean instanceof com.sun.management.ThreadMXBean))
+      return null;
+    var sunBean = (com.sun.management.ThreadMXBean) bean;
+    if (!sunBean.isThreadAllocatedMemorySupported())
+      return null;
+    if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+      sunBean.setThreadAllocatedMemoryEnabled(true);
+    }
+    return sunBean;
+  }
+}
@@ -1,122 +1,274 @@
 package com.company.tree;
 
+import com.company.data.Dataset;
+import com.company.data.Dictionary;
 import com.company.utils.Pair;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.IntBuffer;
 import java.util.*;
-import java.util.stream.Collectors;
 
+/**
+ * Trained tree. Trees are immutable, every field is final, lists and counts passed in are copied and nodes
+ * never change after growing, so a tree may be published to scoring threads by any means, e.g. swapped in a
+ * {@link ModelHolder}.
+ */
 public class Tree {
   private final List<Node> rootNodes;
   private final List<String> columnNames;
+  private final List<Dictionary> dictionaries;
+  private final Dictionary classDictionary;
+  private final double[] rootClassCounts;
+  private final double probabilityToBaseClass;
+  private final CompiledTree compiledTree;
+  private final TreeListener listener;
 
-  public Tree(List<String> columnNames, List<? extends List<String>> attrValues) {
-    this.rootNodes = new LinkedList<>();
-    this.columnNames = columnNames;
+  Tree(
+    List<String> columnNames,
+    List<Dictionary> dictionaries,
+    Dictionary classDictionary,
+    List<Node> rootNodes,
+    double[] rootClassCounts,
+    double probabilityToBaseClass
+  ) {
+    this.rootNodes = List.copyOf(rootNodes);
+    this.columnNames = List.copyOf(columnNames);
+    this.dictionaries = List.copyOf(dictionaries);
+    this.classDictionary = classDictionary;
+    this.rootClassCounts = rootClassCounts.clone();
+    this.probabilityToBaseClass = probabilityToBaseClass;
+
+    this.compiledTree = CompiledTree.compile(
+      this.columnNames, this.dictionaries, classDictionary, this.rootNodes, this.rootClassCounts,
+      probabilityToBaseClass
+    );
+    this.listener = TreeListener.NONE;
   }
 
-  public Tree rebuildToNew(
-    Set<Integer> allowedColumnIndexes,
-    List<String> classes,
-    List<? extends List<String>> attrValues,
-    double probabilityToBaseClass
+  private Tree(Tree tree, TreeListener listener) {
+    this.rootNodes = tree.rootNodes;
+    this.columnNames = tree.columnNames;
+    this.dictionaries = tree.dictionaries;
+    this.classDictionary = tree.classDictionary;
+    this.rootClassCounts = tree.rootClassCounts;
+    this.probabilityToBaseClass = tree.probabilityToBaseClass;
+    this.compiledTree = tree.compiledTree;
+    this.listener = listener;
+  }
+
+  /**
+   * @return the same tree reporting its predictions to the listener, nodes are shared
+   */
+  public Tree withListener(TreeListener listener) {
+    return new Tree(this, Objects.requireNonNull(listener));
+  }
+
+  public static Tree makeTree(Dataset data, Set<Integer> allowedColumnIndexes, double probabilityToBaseClass) {
+    return makeTree(data, allowedColumnIndexes, probabilityToBaseClass, TreeConfig.defaults());
+  }
+
+  /**
+   * Grows a tree over all rows of the dataset, splits are searched over the value index of the config if it
+   * has one and no allowed column has missing values.
+   */
+  public static Tree makeTree(
+    Dataset data, Set<Integer> allowedColumnIndexes, double probabilityToBaseClass, TreeConfig config
   ) {
-    return makeTree(columnNames, allowedColumnIndexes, classes, attrValues, probabilityToBaseClass);
+    var columns = allowedColumnIndexes.stream().mapToInt(Integer::intValue).sorted().toArray();
+    var index = config.valueIndex();
+    // rows with missing values are split into weighted parts, which bitmaps can't hold
+    if (index == null || Arrays.stream(columns).anyMatch(column -> data.dictionary(column).missingCode() != -1)) {
+      var rows = Rows.identity(data.size(), config.isOffHeapRows());
+      return makeTree(data, rows, columns, probabilityToBaseClass, config);
+    }
+
+    long startNanos = config.listener() != TreeListener.NONE ? System.nanoTime() : 0;
+    var rootClassCounts = new double[data.classDictionary().size()];
+    for (int classCode = 0; classCode < rootClassCounts.length; classCode++) {
+      rootClassCounts[classCode] = index.classRows(classCode).cardinality();
+    }
+    var rootNodes = new BitmapTreeBuilder(data, index, probabilityToBaseClass, config)
+      .build(columns, index.allRows(), rootClassCounts);
+    return makeTree(data, rootNodes, rootClassCounts, data.size(), startNanos, probabilityToBaseClass, config);
   }
 
+  /**
+   * Grows a tree over the given rows of the dataset, a row may repeat. The rows array is reordered in place
+   * unless the config asks for off-heap rows, then they are copied. The value index of the config is not used.
+   */
   public static Tree makeTree(
-    List<String> columnNames,
-    Set<Integer> allowedColumnIndexes,
-    List<String> classes,
-    List<? extends List<String>> attrValues,
-    double probabilityToBaseClass
+    Dataset data, int[] rows, int[] allowedColumnIndexes, double probabilityToBaseClass, TreeConfig config
   ) {
-    var tree = new Tree(columnNames, attrValues);
-    tree.rootNodes.addAll(createChildrenFromParent(null, allowedColumnIndexes, classes, attrValues, probabilityToBaseClass));
-    return tree;
+    return makeTree(
+      data, Rows.of(rows, config.isOffHeapRows()), allowedColumnIndexes, probabilityToBaseClass, config
+    );
   }
 
-  public String toJson() {
-    Queue<Node> nodesQueue = new LinkedList<>(rootNodes);
-    var builder = new StringBuilder();
-    builder.append("[");
+  /**
+   * Grows a tree over rows [0, limit) of the buffer, which are reordered in place.
+   */
+  private static Tree makeTree(
+    Dataset data, IntBuffer rows, int[] allowedColumnIndexes, double probabilityToBaseClass, TreeConfig config
+  ) {
+    long startNanos = config.listener() != TreeListener.NONE ? System.nanoTime() : 0;
+    var rootClassCounts = new double[data.classDictionary().size()];
+    for (int i = 0; i < rows.limit(); i++) {
+      rootClassCounts[data.classCode(rows.get(i))]++;
+    }
+    var rootNodes = new TreeBuilder(data, rows, probabilityToBaseClass, config)
+      .build(allowedColumnIndexes, rootClassCounts);
+    return makeTree(data, rootNodes, rootClassCounts, rows.limit(), startNanos, probabilityToBaseClass, config);
+  }
 
-    while (!nodesQueue.isEmpty()) {
-      var parent = nodesQueue.poll();
-      builder.append(nodeToJson(parent)).append(",");
+  /**
+   * Prunes grown nodes if the config asks to and reports the tree to the listener.
+   */
+  private static Tree makeTree(
+    Dataset data, List<Node> rootNodes, double[] rootClassCounts, int rows, long startNanos,
+    double probabilityToBaseClass, TreeConfig config
+  ) {
+    if (config.isPruning()) {
+      int rootClassCode = Node.chooseClass(
+        rootClassCounts, Node.baseClass(data.classDictionary()), probabilityToBaseClass
+      );
+      rootNodes = Pruning.prune(rootNodes, rootClassCounts, rootClassCode, config.pruningConfidence());
+    }
+
+    var dictionaries = new ArrayList<Dictionary>(data.columnCount());
+    for (int column = 0; column < data.columnCount(); column++) {
+      dictionaries.add(data.dictionary(column));
     }
-    builder.append("]");
-    return builder.toString();
+    var tree = new Tree(
+      data.columnNames(), dictionaries, data.classDictionary(), rootNodes, rootClassCounts, probabilityToBaseClass
+    );
+    var listener = config.listener();
+    if (listener == TreeListener.NONE) {
+      return tree;
+    }
+    listener.onTreeBuilt(rows, System.nanoTime() - startNanos);
+    return tree.withListener(listener);
   }
 
-  public Pair<String, Double> predict(List<String> attrValue) {
-    List<Node> nodes = rootNodes;
-    String resultClass = null;
-    Double probability = null;
+  /**
+   * @return flat representation of the tree used for prediction
+   */
+  public CompiledTree compile() {
+    return compiledTree;
+  }
 
-    while (resultClass == null && !nodes.isEmpty()) {
-      var matchedNode = nodes.stream()
-        .filter(node -> attrValue.get(node.columnIdx).equals(node.columnValue))
-        .findFirst().get();
+  public String toJson() {
+    var writer = new StringWriter();
+    try {
+      TreeIO.writeJson(this, writer);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * @see CompiledTree#encode
+   */
+  public Dataset encode(Dataset data) {
+    return compiledTree.encode(data);
+  }
 
-      if (matchedNode.children.isEmpty()) {
-        resultClass = matchedNode.prevailingClassValue;
-        probability = matchedNode.classProbability;
-      }
-      nodes = matchedNode.children;
+  /**
+   * Values which the tree didn't see in the matched node fall back to the class of that node.
+   *
+   * @return code of predicted class with its probability
+   */
+  public Pair<Integer, Double> predict(Dataset data, int row) {
+    long startNanos = listener != TreeListener.NONE ? System.nanoTime() : 0;
+    int leaf = compiledTree.leaf(data, row);
+    var result = Pair.of(compiledTree.classCode(leaf), compiledTree.probability(leaf));
+    if (listener != TreeListener.NONE) {
+      listener.onPredict(1, System.nanoTime() - startNanos);
     }
+    return result;
+  }
 
-    return Pair.of(resultClass, probability);
+  public int predictClass(Dataset data, int row) {
+    if (listener == TreeListener.NONE) {
+      return compiledTree.predictClass(data, row);
+    }
+    long startNanos = System.nanoTime();
+    int classCode = compiledTree.predictClass(data, row);
+    listener.onPredict(1, System.nanoTime() - startNanos);
+    return classCode;
   }
 
-  public String predictClass(List<String> attrValue) {
-    return predict(attrValue).first;
+  /**
+   * Predicts with another probability of the base class necessary to report it, the tree is not retrained.
+   */
+  public int predictClass(Dataset data, int row, double probabilityToBaseClass) {
+    if (listener == TreeListener.NONE) {
+      return compiledTree.predictClass(data, row, probabilityToBaseClass);
+    }
+    long startNanos = System.nanoTime();
+    int classCode = compiledTree.predictClass(data, row, probabilityToBaseClass);
+    listener.onPredict(1, System.nanoTime() - startNanos);
+    return classCode;
   }
 
-  private static List<Node> createChildrenFromParent(
-    Node parentNode,
-    Set<Integer> allowedColumnIndexes,
-    List<String> classes,
-    List<? extends List<String>> attrValues,
-    double probabilityToBaseClass
-  ) {
-    List<Node> children;
-
-    if (parentNode != null) {
-      var allowedColumnIndexesWithoutParentNodeTargetIndex = new HashSet<>(allowedColumnIndexes);
-      allowedColumnIndexesWithoutParentNodeTargetIndex.remove(parentNode.columnIdx);
-      var cuttedByParentClasses = new LinkedList<String>();
-      var cuttedByParentAttrValues = new LinkedList<List<String>>();
-      for (int i = 0; i < classes.size(); i++) {
-        if (attrValues.get(i).get(parentNode.columnIdx).equals(parentNode.columnValue)) {
-          cuttedByParentClasses.add(classes.get(i));
-          cuttedByParentAttrValues.add(attrValues.get(i));
-        }
-      }
-      children = allowedColumnIndexesWithoutParentNodeTargetIndex.isEmpty()
-        ? Collections.emptyList()
-        : Node.makeNodes(
-        parentNode, allowedColumnIndexesWithoutParentNodeTargetIndex, cuttedByParentClasses, cuttedByParentAttrValues, probabilityToBaseClass
-      );
+  /**
+   * @return probability of the base class for every row, a single scoring pass for any count of thresholds
+   */
+  public double[] baseClassProbabilities(Dataset data) {
+    long startNanos = listener != TreeListener.NONE ? System.nanoTime() : 0;
+    var result = compiledTree.baseClassProbabilities(data);
+    if (listener != TreeListener.NONE) {
+      listener.onPredict(data.size(), System.nanoTime() - startNanos);
+    }
+    return result;
+  }
 
-      parentNode.addChildren(children);
-      children.forEach(child -> createChildrenFromParent(child, allowedColumnIndexesWithoutParentNodeTargetIndex, cuttedByParentClasses, cuttedByParentAttrValues, probabilityToBaseClass));
-    } else {
-      children = allowedColumnIndexes.isEmpty()
-        ? Collections.emptyList()
-        : Node.makeNodes(null, allowedColumnIndexes, classes, attrValues, probabilityToBaseClass);
-      children.forEach(child -> createChildrenFromParent(child, allowedColumnIndexes, classes, attrValues, probabilityToBaseClass));
+  /**
+   * Predicts rows [from, to) of the dataset into the same positions of the result arrays.
+   */
+  public void predict(Dataset data, int from, int to, int[] classCodes, double[] probabilities) {
+    long startNanos = listener != TreeListener.NONE ? System.nanoTime() : 0;
+    compiledTree.predict(data, from, to, classCodes, probabilities);
+    if (listener != TreeListener.NONE) {
+      listener.onPredict(to - from, System.nanoTime() - startNanos);
     }
-    return children;
-  }
-
-  private StringBuilder nodeToJson(Node node) {
-    var childrenJson = node.children.stream().map(this::nodeToJson).collect(Collectors.joining(","));
-    return new StringBuilder()
-      .append("{")
-      .append("\"column-index\"").append(":").append("\"").append(node.columnIdx).append("\",")
-      .append("\"column-name\"").append(":").append("\"").append(columnNames.get(node.columnIdx)).append("\",")
-      .append("\"prevailing-class\"").append(":").append("\"").append(node.prevailingClassValue).append("\",")
-      .append("\"children\"").append(":").append("[").append(childrenJson).append("]")
-      .append("}");
+  }
+
+  /**
+   * Predicts every row of the dataset, large datasets are scored on all cores.
+   */
+  public Predictions predict(Dataset data) {
+    long startNanos = listener != TreeListener.NONE ? System.nanoTime() : 0;
+    var predictions = compiledTree.predict(data);
+    if (listener != TreeListener.NONE) {
+      listener.onPredict(data.size(), System.nanoTime() - startNanos);
+    }
+    return predictions;
+  }
+
+  List<Node> rootNodes() {
+    return rootNodes;
+  }
+
+  List<String> columnNames() {
+    return columnNames;
+  }
+
+  List<Dictionary> dictionaries() {
+    return dictionaries;
+  }
+
+  Dictionary classDictionary() {
+    return classDictionary;
+  }
+
+  double[] rootClassCounts() {
+    return rootClassCounts;
+  }
+
+  double probabilityToBaseClass() {
+    return probabilityToBaseClass;
   }
 }
@@ -0,0 +1,289 @@
+package com.company.tree;
+
+import com.company.data.Dataset;
+import com.company.utils.Pair;
+
+import java.nio.IntBuffer;
+import java.util.*;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Grows nodes over one shared row-index buffer. Every node owns a [offset, offset + length) slice of it,
+ * which is partitioned in place by the value of the chosen column, so every child gets its own sub-slice.
+ * Sibling slices never overlap, so subtrees can be built by independent fork-join tasks.
+ * <p>
+ * Missing values are handled as by C4.5: a row whose value of the chosen column is missing goes to every
+ * child with its weight multiplied by the share of the child's known rows. Only a node with such rows copies
+ * its rows into arrays of its own for every child, with a parallel array of weights; the subtrees below grow
+ * from those arrays, and nodes without missing rows keep partitioning the shared buffer without weights.
+ * <p>
+ * The scratch buffer of partitioning is allocated like the rows one, off-heap for direct rows.
+ */
+class TreeBuilder {
+  private final Dataset data;
+  private final IntBuffer rows;
+  private final IntBuffer scratch;
+  private final int baseClass;
+  // codes of the tree's columns for counting, null to scan columns
+  private PackedCodes packedCodes;
+  private final double probabilityToBaseClass;
+  private final TreeConfig config;
+  private final TreeListener listener;
+  private final boolean instrumented;
+
+  TreeBuilder(Dataset data, IntBuffer rows, double probabilityToBaseClass, TreeConfig config) {
+    this.data = data;
+    this.rows = rows;
+    this.scratch = rows.isDirect() ? Rows.allocateDirect(rows.limit()) : IntBuffer.allocate(rows.limit());
+    this.baseClass = Node.baseClass(data.classDictionary());
+    this.probabilityToBaseClass = probabilityToBaseClass;
+    this.config = config;
+    this.listener = config.listener();
+    this.instrumented = listener != TreeListener.NONE;
+  }
+
+  List<Node> build(int[] allowedColumnIndexes, double[] rootClassCounts) {
+    if (config.isPackedCounting()) {
+      packedCodes = PackedCodes.of(data, allowedColumnIndexes);
+    }
+    var rootTask = new SubtreeTask(rootClassCounts, allowedColumnIndexes, rows, null, 0, rows.limit(), 0);
+    if (config.isParallel()) {
+      return config.pool().invoke(rootTask);
+    }
+    return rootTask.compute();
+  }
+
+  /**
+   * @param classCounts class counts of the parent's rows, weighted
+   * @param rows the shared buffer or rows of the parent's own
+   * @param weights weights of the rows by position, null if every row weighs one
+   * @param depth depth of the parent, the root is at 0
+   * @return grown children of the parent, empty for a leaf
+   */
+  private List<Node> createChildrenFromParent(
+    double[] classCounts, int[] allowedColumnIndexes, IntBuffer rows, double[] weights, int offset, int length,
+    int depth
+  ) {
+    if (isLeaf(config, classCounts, allowedColumnIndexes.length, depth)) {
+      if (instrumented) {
+        listener.onLeaf(depth, length);
+      }
+      return List.of();
+    }
+
+    long startNanos = instrumented ? System.nanoTime() : 0;
+    long startAllocatedBytes = instrumented ? ThreadAllocation.allocatedBytes() : 0;
+    boolean parallelColumnScoring = config.isParallelColumnScoring() && length >= config.parallelRowsCutoff();
+    ContingencyTable table;
+    if (weights != null) {
+      table = ContingencyTable.count(data, allowedColumnIndexes, rows, weights, offset, length);
+    } else if (packedCodes != null && !parallelColumnScoring) {
+      table = packedCodes.count(allowedColumnIndexes, rows, offset, length);
+    } else {
+      table = ContingencyTable.count(data, allowedColumnIndexes, rows, offset, length, parallelColumnScoring);
+    }
+    var children = Node.makeNodes(table, baseClass, probabilityToBaseClass, config.minGainRatio());
+    if (children.isEmpty()) {
+      if (instrumented) {
+        listener.onLeaf(depth, length);
+      }
+      return List.of();
+    }
+    long splitSearchEndNanos = instrumented ? System.nanoTime() : 0;
+    int columnIdx = children.get(0).columnIdx;
+    int slot = 0;
+    while (allowedColumnIndexes[slot] != columnIdx) {
+      slot++;
+    }
+    int missingCode = table.missingCodes[slot];
+    boolean hasMissing = missingCode != -1 && table.valueCount(slot, missingCode) > 0.;
+
+    var allowedColumnIndexesWithoutTargetIndex = Arrays.stream(allowedColumnIndexes)
+      .filter(idx -> idx != columnIdx)
+      .toArray();
+    var tasks = new ArrayList<SubtreeTask>(children.size());
+    if (weights == null && !hasMissing) {
+      var valueOffsets = partition(columnIdx, offset, length);
+      for (var child : children) {
+        int childOffset = valueOffsets[child.columnValue];
+        int childLength = valueOffsets[child.columnValue + 1] - childOffset;
+        tasks.add(new SubtreeTask(
+          child.classCounts, allowedColumnIndexesWithoutTargetIndex, rows, null, childOffset, childLength, depth + 1
+        ));
+      }
+    } else {
+      // shares are normalised over the children, so missing rows keep their whole weight
+      double childrenCount = 0.;
+      for (var child : children) {
+        childrenCount += table.valueCount(slot, child.columnValue);
+      }
+      var shares = new double[children.size()];
+      for (int i = 0; i < children.size(); i++) {
+        shares[i] = table.valueCount(slot, children.get(i).columnValue) / childrenCount;
+      }
+      var childRows = distribute(children, shares, missingCode, rows, weights, offset, length);
+      for (int i = 0; i < children.size(); i++) {
+        var childWeights = childRows.second[i];
+        tasks.add(new SubtreeTask(
+          children.get(i).classCounts, allowedColumnIndexesWithoutTargetIndex, childRows.first[i], childWeights, 0,
+          childWeights.length, depth + 1
+        ));
+      }
+    }
+    if (instrumented) {
+      long endNanos = System.nanoTime();
+      long allocatedBytes = ThreadAllocation.allocatedBytes();
+      listener.onSplit(
+        depth, length, allowedColumnIndexes.length, splitSearchEndNanos - startNanos, endNanos - splitSearchEndNanos,
+        allocatedBytes < 0 ? -1 : allocatedBytes - startAllocatedBytes
+      );
+    }
+
+    // children are leaves of the split search, each is replaced by itself with the grown subtree
+    var grownChildren = new ArrayList<Node>(children.size());
+    if (config.isParallel() && length >= config.parallelRowsCutoff()) {
+      SubtreeTask.invokeAll(tasks);
+      for (int i = 0; i < children.size(); i++) {
+        grownChildren.add(withSubtree(children.get(i), tasks.get(i).join()));
+      }
+    } else {
+      for (int i = 0; i < children.size(); i++) {
+        grownChildren.add(withSubtree(children.get(i), tasks.get(i).compute()));
+      }
+    }
+    return List.copyOf(grownChildren);
+  }
+
+  private static Node withSubtree(Node node, List<Node> children) {
+    return children.isEmpty() ? node : node.withChildren(children);
+  }
+
+  /**
+   * Stopping rules of the config which are known before the node's columns are counted. Min rows applies to
+   * the weight of the node, the sum of its class counts, not to the count of row fragments it holds.
+   */
+  static boolean isLeaf(TreeConfig config, double[] classCounts, int allowedColumnsCount, int depth) {
+    if (allowedColumnsCount == 0 || depth >= config.maxDepth() || Node.weight(classCounts) < config.minRows()) {
+      return true;
+    }
+    if (config.isStopOnPure()) {
+      int presentClasses = 0;
+      for (double count : classCounts) {
+        if (count > 0.)
+          presentClasses++;
+      }
+      return presentClasses <= 1;
+    }
+    return false;
+  }
+
+  /**
+   * Stable counting sort of rows[offset, offset + length) by the column value.
+   *
+   * @return offsets of each value's sub-slice, the value v takes [offsets[v], offsets[v + 1])
+   */
+  private int[] partition(int columnIdx, int offset, int length) {
+    int valuesSize = data.dictionary(columnIdx).size();
+    var valueOffsets = new int[valuesSize + 1];
+    for (int i = offset; i < offset + length; i++) {
+      valueOffsets[data.value(columnIdx, rows.get(i)) + 1]++;
+    }
+    valueOffsets[0] = offset;
+    for (int value = 0; value < valuesSize; value++) {
+      valueOffsets[value + 1] += valueOffsets[value];
+    }
+
+    var positions = Arrays.copyOf(valueOffsets, valuesSize);
+    for (int i = offset; i < offset + length; i++) {
+      int row = rows.get(i);
+      scratch.put(positions[data.value(columnIdx, row)]++, row);
+    }
+    rows.put(offset, scratch, offset, length);
+    return valueOffsets;
+  }
+
+  /**
+   * Copies rows[offset, offset + length) into arrays of every child: a row with a known value goes to the child
+   * of the value with its weight, a row with the missing value goes to every child with its weight multiplied
+   * by the child's share, shares sum to one. Every value with weight has a child, so only rows of zero weight
+   * can be left without one, they are dropped.
+   *
+   * @return rows and weights of every child
+   */
+  private Pair<IntBuffer[], double[][]> distribute(
+    List<Node> children, double[] shares, int missingCode, IntBuffer rows, double[] weights, int offset, int length
+  ) {
+    int columnIdx = children.get(0).columnIdx;
+    var childOfValues = new int[data.dictionary(columnIdx).size()];
+    Arrays.fill(childOfValues, -1);
+    for (int i = 0; i < children.size(); i++) {
+      childOfValues[children.get(i).columnValue] = i;
+    }
+
+    int missingRows = 0;
+    var sizes = new int[children.size()];
+    for (int i = offset; i < offset + length; i++) {
+      int value = data.value(columnIdx, rows.get(i));
+      if (value == missingCode) {
+        missingRows++;
+      } else if (childOfValues[value] != -1) {
+        sizes[childOfValues[value]]++;
+      }
+    }
+
+    var childRows = new IntBuffer[children.size()];
+    var childWeights = new double[children.size()][];
+    for (int i = 0; i < children.size(); i++) {
+      int size = sizes[i] + missingRows;
+      childRows[i] = rows.isDirect() ? Rows.allocateDirect(size) : IntBuffer.allocate(size);
+      childWeights[i] = new double[size];
+    }
+    var positions = new int[children.size()];
+    for (int i = offset; i < offset + length; i++) {
+      int row = rows.get(i);
+      double weight = weights != null ? weights[i] : 1.;
+      int value = data.value(columnIdx, row);
+      if (value == missingCode) {
+        for (int child = 0; child < children.size(); child++) {
+          childRows[child].put(positions[child], row);
+          childWeights[child][positions[child]++] = weight * shares[child];
+        }
+      } else if (childOfValues[value] != -1) {
+        int child = childOfValues[value];
+        childRows[child].put(positions[child], row);
+        childWeights[child][positions[child]++] = weight;
+      }
+    }
+    return Pair.of(childRows, childWeights);
+  }
+
+  private class SubtreeTask extends RecursiveTask<List<Node>> {
+    private static final long serialVersionUID = 1L;
+
+    private final double[] classCounts;
+    private final int[] allowedColumnIndexes;
+    private final IntBuffer rows;
+    private final double[] weights;
+    private final int offset;
+    private final int length;
+    private final int depth;
+
+    SubtreeTask(
+      double[] classCounts, int[] allowedColumnIndexes, IntBuffer rows, double[] weights, int offset, int length,
+      int depth
+    ) {
+      this.classCounts = classCounts;
+      this.allowedColumnIndexes = allowedColumnIndexes;
+      this.rows = rows;
+      this.weights = weights;
+      this.offset = offset;
+      this.length = length;
+      this.depth = depth;
+    }
+
+    @Override
+    protected List<Node> compute() {
+      return createChildrenFromParent(classCounts, allowedColumnIndexes, rows, weights, offset, length, depth);
+    }
+  }
+}
@@ -0,0 +1,259 @@
+package com.company.tree;
+
+import com.company.data.ValueIndex;
+
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Settings of tree growing. Instances are immutable, every {@code with*} method returns a changed copy.
+ * <p>
+ * By default a node is split while there are columns left and its rows are not all of one class, nothing
+ * is pruned.
+ */
+public class TreeConfig {
+  private static final int DEFAULT_PARALLEL_ROWS_CUTOFF = 4096;
+  private static final double DEFAULT_PRUNING_CONFIDENCE = 0.25;
+
+  private boolean parallel;
+  private int parallelRowsCutoff = DEFAULT_PARALLEL_ROWS_CUTOFF;
+  private boolean parallelColumnScoring;
+  private ForkJoinPool pool;
+  private int maxDepth = Integer.MAX_VALUE;
+  private int minRows = 1;
+  private double minGainRatio;
+  private boolean stopOnPure = true;
+  private double pruningConfidence = Double.NaN;
+  private TreeListener listener = TreeListener.NONE;
+  private boolean offHeapRows;
+  private ValueIndex valueIndex;
+  private boolean packedCounting;
+
+  private TreeConfig() {
+  }
+
+  public static TreeConfig defaults() {
+    return new TreeConfig();
+  }
+
+  /**
+   * Subtrees over at least {@code parallelRowsCutoff} rows are built in their own fork-join tasks.
+   */
+  public TreeConfig withParallelism(boolean parallel, int parallelRowsCutoff) {
+    if (parallelRowsCutoff < 1) {
+      throw new IllegalArgumentException("Rows cutoff must be positive, but get " + parallelRowsCutoff);
+    }
+    var config = copy();
+    config.parallel = parallel;
+    config.parallelRowsCutoff = parallelRowsCutoff;
+    return config;
+  }
+
+  /**
+   * Candidate columns of nodes over at least {@link #parallelRowsCutoff()} rows are counted in parallel.
+   */
+  public TreeConfig withParallelColumnScoring(boolean parallelColumnScoring) {
+    var config = copy();
+    config.parallelColumnScoring = parallelColumnScoring;
+    return config;
+  }
+
+  public TreeConfig withPool(ForkJoinPool pool) {
+    var config = copy();
+    config.pool = pool;
+    return config;
+  }
+
+  /**
+   * Nodes at the depth are not split, children of the root are at depth 1.
+   */
+  public TreeConfig withMaxDepth(int maxDepth) {
+    if (maxDepth < 0) {
+      throw new IllegalArgumentException("Max depth must be non-negative, but get " + maxDepth);
+    }
+    var config = copy();
+    config.maxDepth = maxDepth;
+    return config;
+  }
+
+  /**
+   * Nodes over fewer rows are not split.
+   */
+  public TreeConfig withMinRows(int minRows) {
+    if (minRows < 1) {
+      throw new IllegalArgumentException("Min rows must be positive, but get " + minRows);
+    }
+    var config = copy();
+    config.minRows = minRows;
+    return config;
+  }
+
+  /**
+   * Nodes whose best split has a smaller gain ratio are not split, 0 disables the rule.
+   */
+  public TreeConfig withMinGainRatio(double minGainRatio) {
+    if (!(minGainRatio >= 0.)) {
+      throw new IllegalArgumentException("Min gain ratio must be non-negative, but get " + minGainRatio);
+    }
+    var config = copy();
+    config.minGainRatio = minGainRatio;
+    return config;
+  }
+
+  /**
+   * Whether nodes with rows of a single class are left unsplit. Their subtrees can't predict anything else,
+   * so it only saves work and is on by default.
+   */
+  public TreeConfig withStopOnPure(boolean stopOnPure) {
+    var config = copy();
+    config.stopOnPure = stopOnPure;
+    return config;
+  }
+
+  /**
+   * Enables C4.5 pessimistic post-pruning with the default confidence 0.25.
+   */
+  public TreeConfig withPruning() {
+    return withPruning(DEFAULT_PRUNING_CONFIDENCE);
+  }
+
+  /**
+   * Enables C4.5 pessimistic post-pruning, lower confidence prunes more.
+   */
+  public TreeConfig withPruning(double confidence) {
+    if (!(confidence > 0. && confidence < 1.)) {
+      throw new IllegalArgumentException("Pruning confidence must be in (0, 1), but get " + confidence);
+    }
+    var config = copy();
+    config.pruningConfidence = confidence;
+    return config;
+  }
+
+  public TreeConfig withoutPruning() {
+    var config = copy();
+    config.pruningConfidence = Double.NaN;
+    return config;
+  }
+
+  /**
+   * The listener receives growing events and is kept by grown trees for prediction events.
+   */
+  public TreeConfig withListener(TreeListener listener) {
+    var config = copy();
+    config.listener = Objects.requireNonNull(listener);
+    return config;
+  }
+
+  /**
+   * Whether the row-index permutation and its partitioning scratch are kept in direct memory, so growing a
+   * tree over a mapped dataset leaves the heap with nodes only.
+   */
+  public TreeConfig withOffHeapRows(boolean offHeapRows) {
+    var config = copy();
+    config.offHeapRows = offHeapRows;
+    return config;
+  }
+
+  /**
+   * Trees grown over all rows of the indexed dataset search splits by intersections of row bitmaps of the
+   * index instead of row scans. Trees grown over samples of rows, as of forests, don't use it.
+   *
+   * @param valueIndex index of the dataset trees are grown over, null to scan rows
+   */
+  public TreeConfig withValueIndex(ValueIndex valueIndex) {
+    var config = copy();
+    config.valueIndex = valueIndex;
+    return config;
+  }
+
+  /**
+   * Whether a tree packs the codes of its columns with classes row by row before growing, so a node counts
+   * eight columns of a row per load. Counting falls back to column scans for columns of more than 256
+   * (value, class) cells and for parallel column scoring.
+   */
+  public TreeConfig withPackedCounting(boolean packedCounting) {
+    var config = copy();
+    config.packedCounting = packedCounting;
+    return config;
+  }
+
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  public int parallelRowsCutoff() {
+    return parallelRowsCutoff;
+  }
+
+  public boolean isParallelColumnScoring() {
+    return parallelColumnScoring;
+  }
+
+  public ForkJoinPool pool() {
+    return pool != null ? pool : ForkJoinPool.commonPool();
+  }
+
+  public int maxDepth() {
+    return maxDepth;
+  }
+
+  public int minRows() {
+    return minRows;
+  }
+
+  public double minGainRatio() {
+    return minGainRatio;
+  }
+
+  public boolean isStopOnPure() {
+    return stopOnPure;
+  }
+
+  public boolean isPruning() {
+    return !Double.isNaN(pruningConfidence);
+  }
+
+  /**
+   * @return confidence of pessimistic pruning, NaN if pruning is off
+   */
+  public double pruningConfidence() {
+    return pruningConfidence;
+  }
+
+  public TreeListener listener() {
+    return listener;
+  }
+
+  public boolean isOffHeapRows() {
+    return offHeapRows;
+  }
+
+  public boolean isPackedCounting() {
+    return packedCounting;
+  }
+
+  /**
+   * @return index of the dataset, null if rows are scanned
+   */
+  public ValueIndex valueIndex() {
+    return valueIndex;
+  }
+
+  private TreeConfig copy() {
+    var config = new TreeConfig();
+    config.parallel = parallel;
+    config.parallelRowsCutoff = parallelRowsCutoff;
+    config.parallelColumnScoring = parallelColumnScoring;
+    config.pool = pool;
+    config.maxDepth = maxDepth;
+    config.minRows = minRows;
+    config.minGainRatio = minGainRatio;
+    config.stopOnPure = stopOnPure;
+    config.pruningConfidence = pruningConfidence;
+    config.listener = listener;
+    config.offHeapRows = offHeapRows;
+    config.valueIndex = valueIndex;
+    config.packedCounting = packedCounting;
+    return config;
+  }
+}
@@ -0,0 +1,514 @@
+package com.company.tree;
+
+import com.company.data.Dictionary;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Persistence of trees.
+ * <p>
+ * Binary format keeps a {@link CompiledTree} for scoring. All numbers are big-endian:
+ * <pre>
+ *   int magic "DTRE", int version
+ *   int columnsCount, columnsCount × (string name, int valuesCount, valuesCount × string value)
+ *   int classesCount, classesCount × string class
+ *   int nodeCount, int childrenSize
+ *   int[nodeCount] splitColumns, int[nodeCount] childOffsets, int[childrenSize] children,
+ *   int[nodeCount] classCodes, double[nodeCount] probabilities,
+ *   double[nodeCount × classesCount] classCounts
+ * </pre>
+ * where string is int length followed by UTF-8 bytes.
+ * <p>
+ * JSON format keeps the whole {@link Tree} with its nodes and is written and read by streaming, columns
+ * and classes must precede nodes in it. Class counts are weights of rows, fractional where rows with missing
+ * values were shared, version 1 kept them rounded and is still read.
+ * <p>
+ * Nodes are checked while they are read, as the binary node arrays are: split columns exist, class counts have
+ * a count per class and siblings split the same column by distinct values. A node that fails fails the load
+ * with {@link IOException} naming its JSON path.
+ */
+public class TreeIO {
+  private static final int MAGIC = 0x44545245; // "DTRE"
+  private static final int VERSION = 4;
+  private static final int JSON_VERSION = 2;
+  private static final int MIN_JSON_VERSION = 1;
+
+  private TreeIO() {
+  }
+
+  public static void writeBinary(CompiledTree tree, Path path) throws IOException {
+    try (var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+      output.writeInt(MAGIC);
+      output.writeInt(VERSION);
+
+      output.writeInt(tree.columnNames.size());
+      for (int column = 0; column < tree.columnNames.size(); column++) {
+        writeString(output, tree.columnNames.get(column));
+        writeDictionary(output, tree.dictionaries.get(column));
+      }
+      writeDictionary(output, tree.classDictionary);
+
+      output.writeInt(tree.splitColumns.length);
+      output.writeInt(tree.children.length);
+      writeInts(output, tree.splitColumns);
+      writeInts(output, tree.childOffsets);
+      writeInts(output, tree.children);
+      writeInts(output, tree.classCodes);
+      writeDoubles(output, tree.probabilities);
+      writeDoubles(output, tree.classCounts);
+    }
+  }
+
+  /**
+   * Loads a tree written by {@link #writeBinary}. The file is memory-mapped and node arrays are bulk-copied
+   * out of the mapping, so loading doesn't parse anything but the dictionaries. The node arrays are checked
+   * once, a truncated or corrupt file fails here with {@link IllegalArgumentException}.
+   */
+  public static CompiledTree readBinary(Path path) throws IOException {
+    ByteBuffer buffer;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    try {
+      return readBinary(buffer, path);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("Model " + path + " is truncated", e);
+    }
+  }
+
+  private static CompiledTree readBinary(ByteBuffer buffer, Path path) {
+    if (buffer.getInt() != MAGIC) {
+      throw new IllegalArgumentException("File " + path + " is not a tree model");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IllegalArgumentException("Unsupported model version " + version + ", expect " + VERSION);
+    }
+
+    int columnsCount = buffer.getInt();
+    var columnNames = new ArrayList<String>(columnsCount);
+    var dictionaries = new ArrayList<Dictionary>(columnsCount);
+    for (int column = 0; column < columnsCount; column++) {
+      columnNames.add(readString(buffer));
+      dictionaries.add(readDictionary(buffer));
+    }
+    var classDictionary = readDictionary(buffer);
+
+    int nodeCount = buffer.getInt();
+    int childrenSize = buffer.getInt();
+    long arraysBytes = (long) nodeCount * (3 * Integer.BYTES + Double.BYTES)
+      + (long) childrenSize * Integer.BYTES + (long) nodeCount * classDictionary.size() * Double.BYTES;
+    if (nodeCount < 1 || childrenSize < 0 || arraysBytes != buffer.remaining()) {
+      throw new IllegalArgumentException(
+        "Expect " + arraysBytes + " bytes of " + nodeCount + " nodes and " + childrenSize + " children in " + path +
+          ", but get " + buffer.remaining()
+      );
+    }
+    var splitColumns = readInts(buffer, nodeCount);
+    var childOffsets = readInts(buffer, nodeCount);
+    var children = readInts(buffer, childrenSize);
+    var classCodes = readInts(buffer, nodeCount);
+    var probabilities = readDoubles(buffer, nodeCount);
+    var classCounts = readDoubles(buffer, nodeCount * classDictionary.size());
+    checkNodes(dictionaries, classDictionary, splitColumns, childOffsets, children, classCodes);
+
+    return new CompiledTree(
+      Collections.unmodifiableList(columnNames), dictionaries, classDictionary,
+      splitColumns, childOffsets, children, classCodes, probabilities, classCounts
+    );
+  }
+
+  /**
+   * Checks the node arrays once, so a corrupt model fails on load rather than in {@link CompiledTree#leaf}: split
+   * columns exist, lookups of inner nodes lie within the children and point to nodes after their own, which
+   * also rules out cycles, class codes exist.
+   */
+  private static void checkNodes(
+    List<Dictionary> dictionaries, Dictionary classDictionary, int[] splitColumns, int[] childOffsets, int[] children,
+    int[] classCodes
+  ) {
+    int nodeCount = splitColumns.length;
+    for (int node = 0; node < nodeCount; node++) {
+      if (classCodes[node] < 0 || classCodes[node] >= classDictionary.size()) {
+        throw new IllegalArgumentException(
+          "Expect class code of node " + node + " in [0, " + classDictionary.size() + "), but get " + classCodes[node]
+        );
+      }
+      int column = splitColumns[node];
+      if (column == -1)
+        continue;
+      if (column < 0 || column >= dictionaries.size()) {
+        throw new IllegalArgumentException(
+          "Expect split column of node " + node + " in [-1, " + dictionaries.size() + "), but get " + column
+        );
+      }
+      int offset = childOffsets[node];
+      int lookupSize = dictionaries.get(column).unknownCode() + 1;
+      if (offset < 0 || offset > children.length - lookupSize) {
+        throw new IllegalArgumentException(
+          "Expect child offset of node " + node + " in [0, " + (children.length - lookupSize) + "], but get " + offset
+        );
+      }
+      for (int i = offset; i < offset + lookupSize; i++) {
+        if (children[i] <= node || children[i] >= nodeCount) {
+          throw new IllegalArgumentException(
+            "Expect child of node " + node + " in (" + node + ", " + nodeCount + "), but get " + children[i]
+          );
+        }
+      }
+    }
+  }
+
+  public static void writeJson(Tree tree, Path path) throws IOException {
+    try (var writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+      writeJson(tree, writer);
+    }
+  }
+
+  public static void writeJson(Tree tree, Writer writer) throws IOException {
+    var json = new JsonWriter(writer);
+    json.beginObject();
+    json.name("version").value(JSON_VERSION);
+    json.name("probability-to-base-class").value(tree.probabilityToBaseClass());
+
+    json.name("columns").beginArray();
+    for (int column = 0; column < tree.columnNames().size(); column++) {
+      json.beginObject();
+      json.name("name").value(tree.columnNames().get(column));
+      json.name("values");
+      writeJsonStrings(json, tree.dictionaries().get(column).values());
+      json.endObject();
+    }
+    json.endArray();
+
+    json.name("classes");
+    writeJsonStrings(json, tree.classDictionary().values());
+    json.name("class-counts");
+    writeJsonDoubles(json, tree.rootClassCounts());
+
+    json.name("nodes").beginArray();
+    for (var node : tree.rootNodes()) {
+      writeJsonNode(json, tree, node);
+    }
+    json.endArray();
+
+    json.endObject();
+    json.flush();
+  }
+
+  public static Tree readJson(Path path) throws IOException {
+    try (var reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+      return readJson(reader);
+    }
+  }
+
+  public static Tree readJson(Reader reader) throws IOException {
+    var json = new JsonReader(reader);
+    if (json.peek() == JsonToken.BEGIN_ARRAY) {
+      // trees were dumped as a bare array of nodes before the format got a version
+      throw new IllegalArgumentException(
+        "Unsupported model version 0, expect " + MIN_JSON_VERSION + " to " + JSON_VERSION
+      );
+    }
+    int version = -1;
+    double probabilityToBaseClass = 0.;
+    var columnNames = new ArrayList<String>();
+    var dictionaries = new ArrayList<Dictionary>();
+    Dictionary classDictionary = null;
+    double[] rootClassCounts = null;
+    List<Node> rootNodes = null;
+
+    json.beginObject();
+    while (json.hasNext()) {
+      switch (json.nextName()) {
+        case "version":
+          version = json.nextInt();
+          if (version < MIN_JSON_VERSION || version > JSON_VERSION) {
+            throw new IllegalArgumentException(
+              "Unsupported model version " + version + ", expect " + MIN_JSON_VERSION + " to " + JSON_VERSION
+            );
+          }
+          break;
+        case "probability-to-base-class":
+          probabilityToBaseClass = json.nextDouble();
+          break;
+        case "columns":
+          json.beginArray();
+          while (json.hasNext()) {
+            json.beginObject();
+            while (json.hasNext()) {
+              switch (json.nextName()) {
+                case "name":
+                  columnNames.add(json.nextString());
+                  break;
+                case "values":
+                  dictionaries.add(Dictionary.of(readJsonStrings(json)));
+                  break;
+                default:
+                  json.skipValue();
+              }
+            }
+            json.endObject();
+          }
+          json.endArray();
+          break;
+        case "classes":
+          classDictionary = Dictionary.of(readJsonStrings(json));
+          break;
+        case "class-counts":
+          rootClassCounts = readJsonDoubles(json);
+          break;
+        case "nodes":
+          if (classDictionary == null) {
+            throw new IllegalArgumentException("Columns and classes must precede nodes");
+          }
+          rootNodes = readJsonNodes(json, dictionaries, classDictionary);
+          break;
+        default:
+          json.skipValue();
+      }
+    }
+    json.endObject();
+
+    if (version == -1) {
+      throw new IllegalArgumentException("Json model has no version, expect " + JSON_VERSION);
+    }
+    if (classDictionary == null || rootClassCounts == null || rootNodes == null) {
+      throw new IllegalArgumentException("Json doesn't contain a tree");
+    }
+    checkJsonClassCounts(rootClassCounts, classDictionary, "$.class-counts");
+    return new Tree(
+      Collections.unmodifiableList(columnNames), dictionaries, classDictionary,
+      rootNodes, rootClassCounts, probabilityToBaseClass
+    );
+  }
+
+  private static void writeJsonNode(JsonWriter json, Tree tree, Node node) throws IOException {
+    json.beginObject();
+    json.name("column-index").value(node.columnIdx);
+    json.name("column-name").value(tree.columnNames().get(node.columnIdx));
+    json.name("column-value").value(tree.dictionaries().get(node.columnIdx).valueOf(node.columnValue));
+    json.name("prevailing-class").value(tree.classDictionary().valueOf(node.prevailingClassValue));
+    json.name("class-probability").value(node.classProbability);
+    json.name("class-counts");
+    writeJsonDoubles(json, node.classCounts);
+    json.name("children").beginArray();
+    for (var child : node.children) {
+      writeJsonNode(json, tree, child);
+    }
+    json.endArray();
+    json.endObject();
+  }
+
+  private static List<Node> readJsonNodes(
+    JsonReader json, List<Dictionary> dictionaries, Dictionary classDictionary
+  ) throws IOException {
+    var path = json.getPath();
+    var nodes = new ArrayList<Node>();
+    json.beginArray();
+    while (json.hasNext()) {
+      nodes.add(readJsonNode(json, dictionaries, classDictionary));
+    }
+    json.endArray();
+
+    // CompiledTree.compile takes the column of the first sibling and a lookup slot per value
+    var values = new HashSet<Integer>();
+    for (var node : nodes) {
+      if (node.columnIdx != nodes.get(0).columnIdx) {
+        throw new IOException(
+          "Expect siblings at " + path + " split column " + nodes.get(0).columnIdx + ", but get " + node.columnIdx
+        );
+      }
+      if (!values.add(node.columnValue)) {
+        var value = dictionaries.get(node.columnIdx).valueOf(node.columnValue);
+        throw new IOException("Expect distinct values of siblings at " + path + ", but get '" + value + "' twice");
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Fields of the node must precede its children, as {@link #writeJsonNode} writes them.
+   */
+  private static Node readJsonNode(
+    JsonReader json, List<Dictionary> dictionaries, Dictionary classDictionary
+  ) throws IOException {
+    var path = json.getPath();
+    int columnIdx = -1;
+    String columnValue = null;
+    String prevailingClass = null;
+    double classProbability = 0.;
+    double[] classCounts = null;
+    Node node = null;
+
+    json.beginObject();
+    while (json.hasNext()) {
+      switch (json.nextName()) {
+        case "column-index":
+          columnIdx = json.nextInt();
+          break;
+        case "column-value":
+          columnValue = json.nextString();
+          break;
+        case "prevailing-class":
+          prevailingClass = json.nextString();
+          break;
+        case "class-probability":
+          classProbability = json.nextDouble();
+          break;
+        case "class-counts":
+          classCounts = readJsonDoubles(json);
+          break;
+        case "children":
+          if (columnIdx == -1 || columnValue == null || prevailingClass == null || classCounts == null) {
+            throw new IllegalArgumentException("Node fields must precede its children");
+          }
+          if (columnIdx < 0 || columnIdx >= dictionaries.size()) {
+            throw new IOException(
+              "Expect column-index of node " + path + " in [0, " + dictionaries.size() + "), but get " + columnIdx
+            );
+          }
+          checkJsonClassCounts(classCounts, classDictionary, path + ".class-counts");
+          node = new Node(
+            columnIdx, codeOf(dictionaries.get(columnIdx), columnValue), codeOf(classDictionary, prevailingClass),
+            classProbability, classCounts, readJsonNodes(json, dictionaries, classDictionary)
+          );
+          break;
+        default:
+          json.skipValue();
+      }
+    }
+    json.endObject();
+
+    if (node == null) {
+      throw new IllegalArgumentException("Node has no children field");
+    }
+    return node;
+  }
+
+  private static void checkJsonClassCounts(
+    double[] classCounts, Dictionary classDictionary, String path
+  ) throws IOException {
+    if (classCounts.length != classDictionary.size()) {
+      throw new IOException(
+        "Expect " + classDictionary.size() + " class counts at " + path + ", but get " + classCounts.length
+      );
+    }
+  }
+
+  private static int codeOf(Dictionary dictionary, String value) {
+    int code = dictionary.codeOf(value);
+    if (code == -1) {
+      throw new IllegalArgumentException("Value '" + value + "' is absent in dictionary");
+    }
+    return code;
+  }
+
+  private static void writeDictionary(DataOutputStream output, Dictionary dictionary) throws IOException {
+    output.writeInt(dictionary.size());
+    for (var value : dictionary.values()) {
+      writeString(output, value);
+    }
+  }
+
+  private static Dictionary readDictionary(ByteBuffer buffer) {
+    int size = buffer.getInt();
+    if (size < 0 || size > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    var values = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readString(buffer));
+    }
+    return Dictionary.of(values);
+  }
+
+  private static void writeString(DataOutputStream output, String value) throws IOException {
+    var bytes = value.getBytes(StandardCharsets.UTF_8);
+    output.writeInt(bytes.length);
+    output.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0 || length > buffer.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    var bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeInts(DataOutputStream output, int[] values) throws IOException {
+    for (int value : values) {
+      output.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(ByteBuffer buffer, int size) {
+    var values = new int[size];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + size * Integer.BYTES);
+    return values;
+  }
+
+  private static void writeDoubles(DataOutputStream output, double[] values) throws IOException {
+    for (double value : values) {
+      output.writeDouble(value);
+    }
+  }
+
+  private static double[] readDoubles(ByteBuffer buffer, int size) {
+    var values = new double[size];
+    buffer.asDoubleBuffer().get(values);
+    buffer.position(buffer.position() + size * Double.BYTES);
+    return values;
+  }
+
+  private static void writeJsonStrings(JsonWriter json, List<String> values) throws IOException {
+    json.beginArray();
+    for (var value : values) {
+      json.value(value);
+    }
+    json.endArray();
+  }
+
+  private static List<String> readJsonStrings(JsonReader json) throws IOException {
+    var values = new ArrayList<String>();
+    json.beginArray();
+    while (json.hasNext()) {
+      values.add(json.nextString());
+    }
+    json.endArray();
+    return values;
+  }
+
+  private static void writeJsonDoubles(JsonWriter json, double[] values) throws IOException {
+    json.beginArray();
+    for (double value : values) {
+      json.value(value);
+    }
+    json.endArray();
+  }
+
+  private static double[] readJsonDoubles(JsonReader json) throws IOException {
+    var values = new ArrayList<Double>();
+    json.beginArray();
+    while (json.hasNext()) {
+      values.add(json.nextDouble());
+    }
+    json.endArray();
+    return values.stream().mapToDouble(Double::doubleValue).toArray();
+  }
+}
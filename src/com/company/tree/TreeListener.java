@@ -0,0 +1,46 @@
+package com.company.tree;
+
+/**
+ * Receives events of tree growing and prediction. Growing events come from fork-join workers when trees are
+ * grown in parallel, so implementations must be thread-safe. All methods do nothing by default.
+ * <p>
+ * Events are measured only when a listener other than {@link #NONE} is set, so without one neither clocks nor
+ * allocation counters are read.
+ */
+public interface TreeListener {
+  TreeListener NONE = new TreeListener() {
+  };
+
+  /**
+   * A node was split.
+   *
+   * @param depth depth of the node, the root is at 0
+   * @param rows count of rows of the node, which were all partitioned between its children
+   * @param columns count of candidate columns scored
+   * @param splitSearchNanos time of counting and scoring candidate columns
+   * @param partitionNanos time of partitioning rows between children
+   * @param allocatedBytes bytes allocated by the thread while splitting, -1 if the JVM doesn't count them
+   */
+  default void onSplit(
+    int depth, long rows, int columns, long splitSearchNanos, long partitionNanos, long allocatedBytes
+  ) {
+  }
+
+  /**
+   * A node was left unsplit.
+   */
+  default void onLeaf(int depth, long rows) {
+  }
+
+  /**
+   * A tree was grown, pruning included.
+   */
+  default void onTreeBuilt(long rows, long nanos) {
+  }
+
+  /**
+   * Rows were predicted by one call.
+   */
+  default void onPredict(int rows, long nanos) {
+  }
+}
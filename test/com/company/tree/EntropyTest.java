@@ -0,0 +1,110 @@
+package com.company.tree;
+
+import java.util.SplittableRandom;
+
+/**
+ * Checks of the entropy kernel against the bisection log2 it replaced and of gain ratios pinned to values
+ * computed by hand. Runs without a test framework:
+ * {@code javac -cp "lib/*" -d out $(find src test -name '*.java') && java -cp "out:lib/*" com.company.tree.EntropyTest}
+ */
+public class EntropyTest {
+  private static final double TOLERANCE = 1e-12;
+
+  public static void main(String[] args) {
+    nLog2nMatchesBisectionLog2();
+    scaledInfoMatchesEntropyOfFrequencies();
+    gainRatioOfBalancedColumn();
+    gainRatioOfUnbalancedColumn();
+    gainRatioWithMissingValues();
+    System.out.println("EntropyTest passed");
+  }
+
+  static void nLog2nMatchesBisectionLog2() {
+    for (int n = 1; n <= 5000; n++) {
+      assertClose("nLog2n(" + n + ")", n * bisectionLog2(n), Entropy.nLog2n(n));
+    }
+    var random = new SplittableRandom(42);
+    for (int i = 0; i < 10000; i++) {
+      int n = 5000 + random.nextInt(200000);
+      assertClose("nLog2n(" + n + ")", n * bisectionLog2(n), Entropy.nLog2n(n));
+    }
+    // the bisection can't go below its lower bound of 0, which is the fault the kernel fixed
+    assertClose("log2(0.25)", -2., Entropy.log2(0.25));
+    assertClose("nLog2n(0.5)", -0.5, Entropy.nLog2n(0.5));
+    assertClose("nLog2n(0)", 0., Entropy.nLog2n(0));
+  }
+
+  static void scaledInfoMatchesEntropyOfFrequencies() {
+    var random = new SplittableRandom(7);
+    for (int i = 0; i < 1000; i++) {
+      var counts = new int[2 + random.nextInt(6)];
+      int total = 0;
+      for (int j = 0; j < counts.length; j++) {
+        counts[j] = random.nextInt(100000);
+        total += counts[j];
+      }
+      if (total == 0)
+        continue;
+      double expected = 0.;
+      for (int count : counts) {
+        if (count > 0) {
+          double quotient = (double) count / total;
+          expected -= quotient * Math.log(quotient) / Math.log(2.);
+        }
+      }
+      assertClose("entropy", expected, Entropy.scaledInfo(counts, 0, counts.length, total) / total);
+
+      var weights = new double[counts.length];
+      for (int j = 0; j < counts.length; j++) {
+        weights[j] = counts[j];
+      }
+      assertClose("weighted entropy", expected, Entropy.scaledInfo(weights, 0, weights.length, total) / total);
+    }
+  }
+
+  static void gainRatioOfBalancedColumn() {
+    // value 0: 3 and 1 rows of the classes, value 1: 0 and 4
+    var table = ContingencyTable.of(new int[]{0}, 2, new double[][]{{3, 1, 0, 4}});
+    assertClose("gain ratio", 0.5487949406953987, Node.gainRatio(table, 0));
+  }
+
+  static void gainRatioOfUnbalancedColumn() {
+    // split info of values of 1, 1 and 6 rows takes log2 of fractions, which the bisection log2 got wrong
+    var table = ContingencyTable.of(new int[]{0}, 2, new double[][]{{1, 0, 0, 1, 2, 4}});
+    assertClose("gain ratio", 0.2503699277882645, Node.gainRatio(table, 0));
+  }
+
+  static void gainRatioWithMissingValues() {
+    // value 2 is missing: gain over 6 known rows scaled by 6 / 8, split info over 3 branches
+    var table = ContingencyTable.of(new int[]{0}, 2, new double[][]{{3, 0, 0, 3, 0, 2}}, new int[]{2});
+    assertClose("gain ratio", 0.4803756539276558, Node.gainRatio(table, 0));
+  }
+
+  /**
+   * Node.log2 before the entropy kernel.
+   */
+  private static double bisectionLog2(double x) {
+    double r = 1;
+    double l = 0;
+    while (Math.pow(2., r) < x) {
+      r++;
+    }
+
+    for (int i = 0; i < 100; i++) {
+      double med = (l + r) / 2.;
+      if (Math.pow(2., med) < x) {
+        l = med;
+      } else {
+        r = med;
+      }
+    }
+
+    return (l + r) / 2.;
+  }
+
+  private static void assertClose(String name, double expected, double actual) {
+    if (!(Math.abs(expected - actual) <= TOLERANCE * Math.max(1., Math.abs(expected)))) {
+      throw new AssertionError("Expect " + name + " = " + expected + ", but get " + actual);
+    }
+  }
+}